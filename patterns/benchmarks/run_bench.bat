@@ -0,0 +1,61 @@
+@echo off
+setlocal EnableExtensions EnableDelayedExpansion
+REM ============================================
+REM JMH benchmarks for JdkMigrationScanner / RegenerateThirdPartyRegex (Windows)
+REM
+REM Usage:
+REM   run_bench.bat [jmh options...]
+REM
+REM Examples:
+REM   run_bench.bat                                   (everything, default params)
+REM   run_bench.bat ScannerBench.scanFile -p files=1000
+REM   run_bench.bat ScannerBench -p patternsCsv=../source-office-laptop/old/master_pattern_v7.csv
+REM
+REM Needs the JMH jars in lib\ (see INSTRUCTIONS_TO_RUN.txt).
+REM Results: results\jmh_<YYYYMMDD_HHMMSS>.json
+REM ============================================
+
+pushd "%~dp0" >nul
+
+set "JAVA21_HOME=D:\Users\kosambia\OneDrive - The Great Eastern Life Assurance Company Limited\Software\jdk-21.0.9"
+if not exist "%JAVA21_HOME%\bin\java.exe" echo [ERROR] JDK 21 not found at "%JAVA21_HOME%" & goto fail
+set "JAVA_HOME=%JAVA21_HOME%"
+set "PATH=%JAVA21_HOME%\bin;%PATH%"
+
+if not exist "lib\jmh-core-*.jar" echo [ERROR] JMH jars not found in "%CD%\lib" & goto fail
+if not exist "lib\jmh-generator-annprocess-*.jar" echo [ERROR] jmh-generator-annprocess jar not found in "%CD%\lib" & goto fail
+
+set "datestamp=%date:~10,4%%date:~4,2%%date:~7,2%"
+set "timestamp=%time:~0,2%%time:~3,2%%time:~6,2%"
+set "timestamp=%timestamp: =0%"
+set "STAMP=%datestamp%_%timestamp%"
+
+if exist "classes" rmdir /s /q "classes"
+mkdir "classes"
+if not exist "results" mkdir "results"
+
+echo [STEP] Compiling scanner and regex generator ...
+javac -encoding UTF-8 -d classes "..\source-office-laptop\old\JdkMigrationScanner.java" "..\source-personal-laptop\RegenerateThirdPartyRegex.java"
+if errorlevel 1 echo [ERROR] Compilation failed. & goto fail
+
+echo [STEP] Compiling benchmarks ...
+set "SOURCES="
+for /r "src" %%F in (*.java) do set "SOURCES=!SOURCES! "%%F""
+javac -encoding UTF-8 -cp "lib\*;classes" -d classes !SOURCES!
+if errorlevel 1 echo [ERROR] Benchmark compilation failed. & goto fail
+
+set "OUT=%CD%\results\jmh_%STAMP%.json"
+echo [STEP] Running JMH ...
+echo [DBG] CMD: "%JAVA_HOME%\bin\java.exe" -cp "lib\*;classes" org.openjdk.jmh.Main -rf json -rff "%OUT%" %*
+"%JAVA_HOME%\bin\java.exe" -cp "lib\*;classes" org.openjdk.jmh.Main -rf json -rff "%OUT%" %*
+set "RC=%ERRORLEVEL%"
+
+echo [RESULT] Exit code: %RC%
+if exist "%OUT%" echo [RESULT] JSON: "%OUT%"
+
+popd >nul
+exit /b %RC%
+
+:fail
+popd >nul
+exit /b 1
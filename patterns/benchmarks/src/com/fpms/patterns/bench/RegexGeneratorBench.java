@@ -0,0 +1,56 @@
+package com.fpms.patterns.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RegenerateThirdPartyRegex hot paths: package-root extraction from a jar and the quote-aware CSV parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegexGeneratorBench {
+
+    @Param({"../source-personal-laptop/thirdparty_patterns_regex_regenerated.csv"})
+    public String thirdPartyCsv;
+
+    @Param({"10000"})
+    public int classesPerJar;
+
+    private Path workDir;
+    private File jar;
+    private List<String> csvLines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("jms-regex-bench");
+        jar = SyntheticCorpus.writeJar(workDir, classesPerJar);
+        csvLines = Files.readAllLines(Paths.get(thirdPartyCsv), StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticCorpus.deleteTree(workDir);
+    }
+
+    @Benchmark
+    public List<?> extractTopPackageRoots() throws Throwable {
+        return (List<?>) Targets.EXTRACT_TOP_PACKAGE_ROOTS.invokeExact(jar, 10);
+    }
+
+    /** Generator's character-level CSV parser over every row of the third-party sheet. */
+    @Benchmark
+    public void parseCsvLine(Blackhole bh) throws Throwable {
+        for (String line : csvLines) bh.consume((List<?>) Targets.PARSE_CSV_LINE.invokeExact(line));
+    }
+}
@@ -0,0 +1,111 @@
+package com.fpms.patterns.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JdkMigrationScanner hot paths against a synthetic fpms-src tree and a real master pattern sheet.
+ *
+ * Compare pattern versions by running twice with -p patternsCsv=... and diffing the JSON results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScannerBench {
+
+    @Param({"../source-office-laptop/old/master_pattern_v8.csv"})
+    public String patternsCsv;
+
+    @Param({"200"})
+    public int files;
+
+    @Param({"300"})
+    public int linesPerFile;
+
+    private Path corpusDir;
+    private List<Path> corpus;
+    private List<?> patterns;
+    private Object prefilter;
+    private List<String> csvLines;
+    private String snapshotCsv;
+    private String largeText;
+    private int[] largeTextOffsets;
+    private int[] probes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        corpusDir = Files.createTempDirectory("jms-bench");
+        corpus = SyntheticCorpus.writeSourceTree(corpusDir, files, linesPerFile);
+        patterns = (List<?>) Targets.LOAD_PATTERNS.invokeExact(patternsCsv);
+        prefilter = (Object) Targets.PREFILTER_BUILD.invokeExact((List) patterns);
+        csvLines = Files.readAllLines(Paths.get(patternsCsv), StandardCharsets.UTF_8);
+        // Copy so the snapshot lands in the temp dir, then load once to write it
+        snapshotCsv = Files.copy(Paths.get(patternsCsv), corpusDir.resolve("patterns.csv")).toString();
+        List<?> warm = (List<?>) Targets.LOAD_PATTERN_SET.invokeExact(snapshotCsv, false);
+
+        largeText = SyntheticCorpus.largeText(files * linesPerFile);
+        largeTextOffsets = (int[]) Targets.COMPUTE_LINE_OFFSETS.invokeExact((CharSequence) largeText);
+        Random rnd = new Random(42);
+        probes = new int[10_000];
+        for (int i = 0; i < probes.length; i++) probes[i] = rnd.nextInt(largeText.length());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticCorpus.deleteTree(corpusDir);
+    }
+
+    @Benchmark
+    public int loadPatterns() throws Throwable {
+        return ((List<?>) Targets.LOAD_PATTERNS.invokeExact(patternsCsv)).size();
+    }
+
+    /** Warm start: CSV hash check + snapshot read + regex compile, no CSV parsing. */
+    @Benchmark
+    public int loadPatternSnapshot() throws Throwable {
+        return ((List<?>) Targets.LOAD_PATTERN_SET.invokeExact(snapshotCsv, false)).size();
+    }
+
+    /** Whole corpus through scanFile (read, prefilter, match, dedupe, CSV row formatting into a null writer). */
+    @Benchmark
+    public int scanFile() throws Throwable {
+        AtomicInteger matchSn = new AtomicInteger();
+        Object seen = (Object) Targets.NEW_DEDUPER.invokeExact();
+        try (BufferedWriter w = new BufferedWriter(Writer.nullWriter())) {
+            Object out = (Object) Targets.NEW_CSV_ROW_WRITER.invokeExact(w, "BenchApp");
+            for (Path p : corpus) {
+                Targets.SCAN_FILE.invokeExact(p, (List) patterns, out, matchSn, seen, false, prefilter,
+                        (Object) null, (Object) null, (Object) null);
+            }
+        }
+        return matchSn.get();
+    }
+
+    @Benchmark
+    public int[] computeLineOffsets() throws Throwable {
+        return (int[]) Targets.COMPUTE_LINE_OFFSETS.invokeExact((CharSequence) largeText);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10_000)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void lineNumberFromOffset(Blackhole bh) throws Throwable {
+        for (int pos : probes) bh.consume((int) Targets.LINE_NUMBER_FROM_OFFSET.invokeExact(largeTextOffsets, pos));
+    }
+
+    /** Scanner's regex-split CSV parser over every row of the pattern sheet. */
+    @Benchmark
+    public void splitCsv(Blackhole bh) throws Throwable {
+        for (String line : csvLines) bh.consume((String[]) Targets.SPLIT_CSV.invokeExact(line));
+    }
+}
@@ -0,0 +1,121 @@
+package com.fpms.patterns.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Deterministic fixtures for the benchmarks: a fake fpms-src tree (Java + JSP) and a fake third-party jar.
+ * Same seed, same bytes, so runs against different pattern versions see identical input.
+ */
+public class SyntheticCorpus {
+
+    private static final long SEED = 20240601L;
+
+    // Lines that hit the core patterns (removed APIs, sun.*, security, legacy collections, third-party imports)
+    private static final String[] HIT_LINES = {
+            "import javax.rmi.CORBA.Stub;",
+            "import org.omg.CORBA.ORB;",
+            "import sun.misc.BASE64Encoder;",
+            "import javax.xml.bind.JAXBContext;",
+            "import org.apache.log4j.Logger;",
+            "import org.apache.commons.lang.StringUtils;",
+            "import org.bouncycastle.jce.provider.BouncyCastleProvider;",
+            "        Cipher c = Cipher.getInstance(\"DES\");",
+            "        MessageDigest md = MessageDigest.getInstance(\"MD5\");",
+            "        javax.transaction.UserTransaction ut = ctx.lookup(\"java:comp/UserTransaction\");",
+            "        Date d = new Date();",
+            "        SimpleDateFormat f = new SimpleDateFormat(\"yyyyMMdd\");",
+            "        List items = new ArrayList<String>();",
+            "        Thread.currentThread().stop();",
+            "        field.setAccessible(true);",
+            "        Object o = clazz.newInstance();",
+            "        SecurityManager sm = System.getSecurityManager();",
+            "    protected void finalize() { close(); }",
+    };
+
+    // Ordinary code, the bulk of every real file
+    private static final String[] PLAIN_LINES = {
+            "        int total = 0;",
+            "        for (int i = 0; i < rows.size(); i++) {",
+            "            total += rows.get(i).getAmount();",
+            "        }",
+            "        if (policy == null) return null;",
+            "        String code = policy.getPolicyCode().trim();",
+            "        // recalculate premium for the current anniversary",
+            "        result.put(\"status\", Integer.valueOf(status));",
+            "        logger.debug(\"processing \" + id);",
+            "    }",
+            "",
+    };
+
+    /** Writes {@code files} files (every 5th one a JSP) of about {@code linesPerFile} lines under {@code root}. */
+    public static List<Path> writeSourceTree(Path root, int files, int linesPerFile) throws IOException {
+        Random rnd = new Random(SEED);
+        List<Path> out = new ArrayList<>();
+        Path javaDir = root.resolve("fpms-src").resolve("src").resolve("com").resolve("ebao").resolve("ls");
+        Path jspDir = root.resolve("fpms-src").resolve("ls_web").resolve("jsp");
+        Files.createDirectories(javaDir);
+        Files.createDirectories(jspDir);
+        for (int f = 0; f < files; f++) {
+            boolean jsp = f % 5 == 4;
+            StringBuilder sb = new StringBuilder(linesPerFile * 40);
+            if (jsp) {
+                sb.append("<%@ page contentType=\"text/html\" import=\"java.util.*,org.apache.log4j.*\" %>\n");
+            } else {
+                sb.append("package com.ebao.ls;\n\n");
+            }
+            for (int i = 0; i < linesPerFile; i++) {
+                // ~3% of lines carry a finding, roughly what the FPMS tree shows
+                String line = rnd.nextInt(100) < 3 ? HIT_LINES[rnd.nextInt(HIT_LINES.length)]
+                        : PLAIN_LINES[rnd.nextInt(PLAIN_LINES.length)];
+                if (jsp && rnd.nextInt(10) == 0) sb.append("<% ").append(line.trim()).append(" %>\n");
+                else sb.append(line).append('\n');
+            }
+            Path p = jsp ? jspDir.resolve("Page" + f + ".jsp") : javaDir.resolve("Service" + f + ".java");
+            Files.write(p, sb.toString().getBytes(StandardCharsets.UTF_8));
+            out.add(p);
+        }
+        return out;
+    }
+
+    /** One large text with {@code lines} lines, for the line-offset benchmarks. */
+    public static String largeText(int lines) {
+        Random rnd = new Random(SEED);
+        StringBuilder sb = new StringBuilder(lines * 40);
+        for (int i = 0; i < lines; i++) sb.append(PLAIN_LINES[rnd.nextInt(PLAIN_LINES.length)]).append('\n');
+        return sb.toString();
+    }
+
+    /** A jar with {@code classes} empty .class entries spread over a few package roots of different depth. */
+    public static File writeJar(Path dir, int classes) throws IOException {
+        String[] packages = {
+                "org/apache/commons/lang", "org/apache/commons/lang/text", "org/apache/commons/lang/time",
+                "org/apache/commons/lang/builder", "org/apache/commons/lang/exception", "org/apache/commons/io",
+                "org/apache/commons/io/input", "com/acme/legacy/core/impl", "com/acme/legacy/util",
+                "META-INF/versions/9/org/apache/commons/lang", "javax/annotation", "sun/misc"
+        };
+        Random rnd = new Random(SEED);
+        Files.createDirectories(dir);
+        File jar = dir.resolve("synthetic-lib-" + classes + ".jar").toFile();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (int i = 0; i < classes; i++) {
+                String pkg = packages[rnd.nextInt(packages.length)];
+                out.putNextEntry(new JarEntry(pkg + "/Generated" + i + (i % 7 == 0 ? "$Inner" : "") + ".class"));
+                out.write(new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE});
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    public static void deleteTree(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) return;
+        try (java.util.stream.Stream<Path> s = Files.walk(root)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.fpms.patterns.bench;
+
+import java.io.BufferedWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handles onto the package-private helpers of JdkMigrationScanner and RegenerateThirdPartyRegex.
+ *
+ * Both tools live in the default package (run as plain "java JdkMigrationScanner ..."), which JMH refuses
+ * for benchmark classes and Java refuses to import from a named package, so the benchmarks reach them here.
+ * The handles are static final, so after JIT they cost the same as a direct call.
+ */
+final class Targets {
+
+    static final MethodHandle LOAD_PATTERNS;       // (String) List
+    static final MethodHandle LOAD_PATTERN_SET;    // (String, boolean) List
+    static final MethodHandle PREFILTER_BUILD;     // (List) Object
+    static final MethodHandle NEW_DEDUPER;         // () Object
+    static final MethodHandle NEW_CSV_ROW_WRITER;  // (BufferedWriter, String) Object
+    static final MethodHandle SCAN_FILE;           // (Path, List, Object, AtomicInteger, Object, boolean, Object, Object, Object, Object) void
+    static final MethodHandle SPLIT_CSV;           // (String) String[]
+    static final MethodHandle COMPUTE_LINE_OFFSETS; // (CharSequence) int[]
+    static final MethodHandle LINE_NUMBER_FROM_OFFSET; // (int[], int) int
+    static final MethodHandle EXTRACT_TOP_PACKAGE_ROOTS; // (File, int) List
+    static final MethodHandle PARSE_CSV_LINE;      // (String) List
+
+    static {
+        try {
+            Class<?> scanner = Class.forName("JdkMigrationScanner");
+            Class<?> regen = Class.forName("RegenerateThirdPartyRegex");
+            Class<?> prefilter = Class.forName("JdkMigrationScanner$Prefilter");
+            Class<?> deduper = Class.forName("JdkMigrationScanner$Deduper");
+            Class<?> csvRowWriter = Class.forName("JdkMigrationScanner$CsvRowWriter");
+            Class<?> findingSink = Class.forName("JdkMigrationScanner$FindingSink");
+            Class<?> scanCache = Class.forName("JdkMigrationScanner$ScanCache");
+            Class<?> profiler = Class.forName("JdkMigrationScanner$Profiler");
+            Class<?> budget = Class.forName("JdkMigrationScanner$RegexBudget");
+
+            LOAD_PATTERNS = method(scanner, "loadPatterns", String.class);
+            LOAD_PATTERN_SET = method(scanner, "loadPatternSet", String.class, boolean.class);
+            PREFILTER_BUILD = generic(method(prefilter, "build", List.class));
+            NEW_DEDUPER = generic(constructor(deduper));
+            NEW_CSV_ROW_WRITER = generic(constructor(csvRowWriter, BufferedWriter.class, String.class));
+            SCAN_FILE = generic(method(scanner, "scanFile", Path.class, List.class, findingSink, AtomicInteger.class,
+                    deduper, boolean.class, prefilter, scanCache, profiler, budget));
+            SPLIT_CSV = method(scanner, "splitCsv", String.class);
+            COMPUTE_LINE_OFFSETS = method(scanner, "computeLineOffsets", CharSequence.class);
+            LINE_NUMBER_FROM_OFFSET = method(scanner, "lineNumberFromOffset", int[].class, int.class);
+            EXTRACT_TOP_PACKAGE_ROOTS = method(regen, "extractTopPackageRoots", java.io.File.class, int.class);
+            PARSE_CSV_LINE = method(regen, "parseCsvLine", String.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Targets() {
+    }
+
+    private static MethodHandle method(Class<?> owner, String name, Class<?>... params) throws ReflectiveOperationException {
+        Method m = owner.getDeclaredMethod(name, params);
+        m.setAccessible(true);
+        return MethodHandles.lookup().unreflect(m);
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... params) throws ReflectiveOperationException {
+        Constructor<?> c = owner.getDeclaredConstructor(params);
+        c.setAccessible(true);
+        return MethodHandles.lookup().unreflectConstructor(c);
+    }
+
+    // Package-private parameter/return types become Object so the benchmarks can call invokeExact.
+    private static MethodHandle generic(MethodHandle h) {
+        MethodType t = h.type();
+        for (int i = 0; i < t.parameterCount(); i++) {
+            if (!isPublic(t.parameterType(i))) t = t.changeParameterType(i, Object.class);
+        }
+        if (!isPublic(t.returnType())) t = t.changeReturnType(Object.class);
+        return h.asType(t);
+    }
+
+    private static boolean isPublic(Class<?> c) {
+        return c.isPrimitive() || c.isArray() || java.lang.reflect.Modifier.isPublic(c.getModifiers());
+    }
+}
@@ -1,422 +1,2854 @@
 // javac -encoding UTF-8 -Xlint:deprecation -Xlint:unchecked JdkMigrationScanner.java
-// java JdkMigrationScanner <patterns.csv> <javaSrcDir> [jspSrcDir] [applicationName] [--exts=.java,.jsp,.xml,...] [--debug]
+// java JdkMigrationScanner --toCsv <output.cols> [out.csv]   (converts a columnar findings file back to output.csv)
+// java JdkMigrationScanner <patterns.csv> <javaSrcDir> [jspSrcDir] [applicationName] [--exts=.java,.jsp,.xml,...] [--threads=N] [--incremental=<cacheDir>] [--profile] [--regexTimeoutMs=N] [--noPatternSnapshot] [--exclude=glob,...] [--format=csv|columnar|both] [--daemon[=port]] [--bytecode] [--depGraph=<file>] [--debug]
+// --threads=N scans files on a work-stealing pool (default: number of cores, 1 = sequential); output.csv is identical either way.
+// --incremental=<cacheDir> keeps a per-file fingerprint index (size, mtime, SHA-256) with the match rows of every pattern;
+// the next run only re-reads changed files and only re-runs new or changed regexes. One index per patterns CSV name.
+// --profile times every regex per file and writes pattern_profile.csv next to output.csv, most expensive pattern first.
+// --regexTimeoutMs=N gives every regex N ms per file; a regex over budget is aborted for that file (hits found so far are
+// kept), logged to regex_timeouts.csv next to output.csv, and the scan carries on with the next pattern.
+// The parsed pattern set (entries + prefilter literals) is snapshotted to <patterns.csv>.snapshot.bin and reused while
+// the CSV bytes are unchanged; --noPatternSnapshot always parses the CSV.
+// --daemon[=port] scans once, keeps every file's matches in memory, watches both roots and rescans only changed files;
+// http://127.0.0.1:<port>/findings.csv (default port 8765) serves the current findings in the output.csv format.
+// --exclude=glob,... skips matching directories (pruned, never listed) and files; a glob with '/' is matched against the
+// path relative to the root, otherwise against the name. .git, .svn and .hg are always skipped.
+// --format=columnar writes output.cols instead of output.csv (both: write the two): pattern rows and file paths stored
+// once in dictionaries, line numbers and indexes as int columns, FoundContent in one string pool. See FindingsStore.
+// --bytecode scans compiled code instead of source: the two roots are directories of .class files and jars (or single
+// jars), e.g. the compiled fpms output and combined_lib. Each class's constant pool is turned into source-like lines
+// (import a.b.C; / a.b.C.method(); / a.b.C.field; / "string constant", see ClassListing) and the same patterns run over
+// them; output.csv has the same columns, FileType CLASS, FilePathName <jar>!/<entry> inside jars, and LineNo is the
+// constant-pool index. Not combined with --incremental or --daemon.
+// --depGraph=<file> builds the source dependency graph of the two roots instead of scanning (the patterns CSV is
+// not read): imports and type references of .java, imports, beans and includes of .jsp/.jspf/.tag, written as a
+// compact adjacency file for the migration orchestrator's batch planning. See DependencyGraph.
+// Each file is first run through an Aho-Corasick prefilter built from the literals every regex requires;
+// only patterns whose literals occur in the file are matched (patterns without usable literals always run).
+// An optional PrefilterLiterals column (';'-separated, e.g. from RegenerateThirdPartyRegex) supplies them directly.
 // Writes output.csv with columns:
 // ApplicationName,PatternID,PatternName,PatternSet,PatternNature,PatternDescription,LineNo,FileType,FilePathName,FoundContent,Fix,RemediationDescription,RemediationEffort,Mandays,JDK8Compatible,JDK21Compatible,CompatibilityStatus,PlanFirstChange,Remediation,ScriptableBySearchReplace
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.*;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.regex.*;
-import java.util.stream.Stream;
 
 public class JdkMigrationScanner {
-  private static final String OUT_CSV = "output.csv";
-  private static final int REGEX_FLAGS = Pattern.MULTILINE | Pattern.DOTALL | Pattern.CASE_INSENSITIVE; // added CI
-  private static final int SNIPPET_MAX_LEN = 300;
-
-  private static final String[] DEFAULT_EXTS = new String[]{
-    ".java", ".jsp", ".jspf", ".tag", ".tagx", ".xsl", ".xslt",
-    ".xml", ".properties", ".yml", ".yaml", ".bat", ".cmd", ".sh",
-    ".gradle", ".kts", ".pom", ".ivy", ".conf", ".cfg"
-  };
-
-  public static void main(String[] args) throws IOException {
-    if (args.length < 2) {
-      System.out.println("Usage: java JdkMigrationScanner <patterns.csv> <javaSrcDir> [jspSrcDir] [applicationName] [--exts=.java,.jsp,...] [--debug]");
-      return;
-    }
-
-    final String csvFile = args[0];
-    final String javaSrcDir = args[1];
-    String jspSrcDir = null;
-    String applicationName = "UnknownApp";
-
-    int argi = 2;
-    if (args.length >= 3) {
-      if (argi < args.length && !isFlag(args[argi])) {
-        jspSrcDir = notEmpty(args[argi]);
-        argi++;
-      }
-      if (argi < args.length && !isFlag(args[argi])) {
-        applicationName = notEmpty(args[argi], applicationName);
-        argi++;
-      }
-    }
-
-    // Flags
-    boolean debug = false;
-    Set<String> exts = new LinkedHashSet<>();
-    while (argi < args.length) {
-      String a = args[argi++];
-      if ("--debug".equalsIgnoreCase(a)) { debug = true; continue; }
-      if (a != null && a.startsWith("--exts=")) {
-        String list = a.substring("--exts=".length());
-        for (String e : list.split("[,;]")) {
-          e = e.trim();
-          if (!e.isEmpty()) {
-            if (!e.startsWith(".")) e = "." + e;
-            exts.add(e.toLowerCase(Locale.ROOT));
-          }
-        }
-      }
-    }
-    if (exts.isEmpty()) {
-      exts.addAll(Arrays.asList(DEFAULT_EXTS));
-    }
-
-    List<PatternEntry> patterns = loadPatterns(csvFile);
-    if (debug) System.out.println("[DEBUG] Loaded patterns: " + patterns.size());
-
-    try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(OUT_CSV), StandardCharsets.UTF_8))) {
-      // Extended header (includes PatternName and new compatibility fields)
-      out.write("ApplicationName,PatternID,PatternName,PatternSet,PatternNature,PatternDescription,LineNo,FileType,FilePathName,FoundContent,Fix,RemediationDescription,RemediationEffort,Mandays,JDK8Compatible,JDK21Compatible,CompatibilityStatus,PlanFirstChange,Remediation,ScriptableBySearchReplace");
-      out.newLine();
-
-      AtomicInteger matchSn = new AtomicInteger(0);
-      Set<String> seen = new HashSet<>();
-
-      // Java root
-      Path javaRoot = Paths.get(javaSrcDir);
-      if (Files.isDirectory(javaRoot)) {
-        if (debug) System.out.println("[DEBUG] Scanning Java root: " + javaRoot);
-        scanTree(javaRoot, exts, patterns, out, matchSn, applicationName, seen, debug);
-      } else {
-        System.err.println("[WARN] Java source dir not found or not a directory: " + javaRoot);
-      }
-
-      // JSP/TAG/XSL root (optional)
-      if (jspSrcDir != null) {
-        Path jspRoot = Paths.get(jspSrcDir);
-        if (Files.isDirectory(jspRoot)) {
-          if (debug) System.out.println("[DEBUG] Scanning JSP/TAG/XSL root: " + jspRoot);
-          scanTree(jspRoot, exts, patterns, out, matchSn, applicationName, seen, debug);
-        } else {
-          System.err.println("[WARN] JSP source dir not found or not a directory: " + jspRoot);
-        }
-      }
-      out.flush();
-    }
-    System.out.println("[INFO] CSV written: " + OUT_CSV);
-  }
-
-  // Pattern loader (header-driven)
-  static List<PatternEntry> loadPatterns(String csvFile) throws IOException {
-    List<PatternEntry> patterns = new ArrayList<>();
-    try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8))) {
-      String header = br.readLine();
-      if (header == null) return patterns;
-      String[] headers = splitCsv(header);
-      Map<String, Integer> idx = headerIndex(headers);
-
-      Integer ixPatternID = idx.get("patternid");
-      Integer ixPatternSet = idx.get("patternset");
-      Integer ixPatternNature = idx.get("patternnature");
-      Integer ixPatternName = idx.get("patternname");
-      Integer ixPatternDesc = idx.get("patterndescription");
-      Integer ixRegex = idx.get("regexpattern");
-      Integer ixFix = idx.get("fix");
-      Integer ixRem = idx.get("remediation");
-      Integer ixRemDesc = idx.get("remediationdescription");
-      Integer ixRemEffort = idx.get("remediationeffort");
-      Integer ixMandays = idx.get("mandays");
-      Integer ixJ8 = idx.get("jdk8compatible");
-      Integer ixJ21 = idx.get("jdk21compatible");
-      Integer ixStatus = idx.get("compatibilitystatus");
-      Integer ixPlan = idx.get("planfirstchange");
-      Integer ixScriptable = idx.get("scriptablebysearchreplace");
-
-      if (ixPatternID == null || ixPatternName == null || ixRegex == null) {
-        throw new IOException("Required headers missing. Need: PatternID, PatternName, RegexPattern");
-      }
-
-      String line;
-      while ((line = br.readLine()) != null) {
-        if (line.trim().isEmpty()) continue;
-        String[] parts = splitCsv(line);
-        String patternID = safeGet(parts, ixPatternID);
-        String patternSet = safeGet(parts, ixPatternSet);
-        String patternNature = safeGet(parts, ixPatternNature);
-        String patternName = safeGet(parts, ixPatternName);
-        String patternDesc = safeGet(parts, ixPatternDesc);
-        String regex = safeGet(parts, ixRegex);
-        String fix = safeGet(parts, ixFix);
-        String remediation = safeGet(parts, ixRem);
-        String remDesc = safeGet(parts, ixRemDesc);
-        String remEffort = safeGet(parts, ixRemEffort);
-        String mandays = safeGet(parts, ixMandays);
-        String j8 = safeGet(parts, ixJ8);
-        String j21 = safeGet(parts, ixJ21);
-        String status = safeGet(parts, ixStatus);
-        String plan = safeGet(parts, ixPlan);
-        String scriptable = safeGet(parts, ixScriptable);
-        if (patternID.isEmpty() || patternName.isEmpty() || regex.isEmpty()) continue;
-        try {
-          Pattern compiled = Pattern.compile(regex, REGEX_FLAGS);
-          patterns.add(new PatternEntry(patternID, patternSet, patternNature, patternName, patternDesc,
-              regex, fix, remediation, remDesc, remEffort, mandays,
-              j8, j21, status, plan, scriptable, compiled));
-        } catch (PatternSyntaxException ex) {
-          System.err.println("[WARN] Skipping invalid regex (" + patternID + " - " + patternName + "): " + ex.getMessage());
-        }
-      }
-    }
-    return patterns;
-  }
-
-  private static Map<String, Integer> headerIndex(String[] headers) {
-    Map<String, Integer> idx = new HashMap<>();
-    for (int i = 0; i < headers.length; i++) {
-      String h = headers[i] == null ? "" : headers[i].trim().replace("\"", "").toLowerCase(Locale.ROOT);
-      switch (h) {
-        case "patternid": case "pattern id": case "id": idx.put("patternid", i); break;
-        case "patternset": case "pattern set": case "set": idx.put("patternset", i); break;
-        case "patternnature": case "pattern nature": case "nature": idx.put("patternnature", i); break;
-        case "patternname": case "pattern name": case "name": idx.put("patternname", i); break;
-        case "patterndescription": case "pattern description": case "description": idx.put("patterndescription", i); break;
-        case "regex pattern": case "regexpattern": case "regex": case "pattern": idx.put("regexpattern", i); break;
-        case "fix": case "recommendedfix": case "resolution": idx.put("fix", i); break;
-        case "remediation": case "resolutiontype": idx.put("remediation", i); break;
-        case "remediationdescription": case "remediation description": idx.put("remediationdescription", i); break;
-        case "remediationeffort": case "remediation effort": idx.put("remediationeffort", i); break;
-        case "mandays": idx.put("mandays", i); break;
-        case "jdk8compatible": case "jdk8": idx.put("jdk8compatible", i); break;
-        case "jdk21compatible": case "jdk21": idx.put("jdk21compatible", i); break;
-        case "compatibilitystatus": case "status": idx.put("compatibilitystatus", i); break;
-        case "planfirstchange": case "plan": idx.put("planfirstchange", i); break;
-        case "scriptablebysearchreplace": case "scriptable": idx.put("scriptablebysearchreplace", i); break;
-        default: /* ignore */
-      }
-    }
-    return idx;
-  }
-
-  private static String[] splitCsv(String line) {
-    return line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
-  }
-  private static String safeGet(String[] parts, Integer ix) {
-    if (ix == null || ix < 0 || ix >= parts.length) return "";
-    String t = parts[ix].trim();
-    if (t.length() >= 2 && t.startsWith("\"") && t.endsWith("\"")) {
-      t = t.substring(1, t.length() - 1);
-    }
-    return t;
-  }
-
-  static void scanTree(Path root, Set<String> exts, List<PatternEntry> patterns, BufferedWriter out, AtomicInteger matchSn,
-                       String appName, Set<String> seen, boolean debug) throws IOException {
-    try (Stream<Path> paths = Files.walk(root)) {
-      paths.filter(Files::isRegularFile)
-           .filter(p -> isSupported(p, exts))
-           .forEach(p -> scanFile(p, patterns, out, matchSn, appName, seen, debug));
-    }
-  }
-
-  static boolean isSupported(Path p, Set<String> exts) {
-    String n = p.getFileName().toString().toLowerCase(Locale.ROOT);
-    for (String ext : exts) { if (n.endsWith(ext)) return true; }
-    return false;
-  }
-
-  static void scanFile(Path file, List<PatternEntry> patterns, BufferedWriter out, AtomicInteger matchSn,
-                       String appName, Set<String> seen, boolean debug) {
-    try {
-      String content = readContentWithFallback(file);
-      int[] lineOffsets = computeLineOffsets(content);
-      String filePathName = relativeFromFpmsSrc(file);
-      String fileType = detectFileType(file);
-      for (PatternEntry p : patterns) {
-        Matcher m = p.compiled.matcher(content);
-        while (m.find()) {
-          int start = m.start();
-          int lineNo = lineNumberFromOffset(lineOffsets, start);
-          String found = m.group();
-          String foundSanitized = sanitizeSnippet(found, SNIPPET_MAX_LEN);
-          String key = p.patternID + "\n" + filePathName + "\n" + lineNo + "\n" + start;
-          if (seen.contains(key)) continue;
-          seen.add(key);
-          if (debug) {
-            System.out.println("Match: [" + p.patternID + "] " + p.patternName + " in " + filePathName + ":" + lineNo);
-          }
-          writeCsvRow(out,
-              appName,
-              p.patternID, p.patternName, p.patternSet, p.patternNature, p.patternDescription,
-              String.valueOf(lineNo), fileType, filePathName,
-              foundSanitized, p.fix, p.remediationDescription, p.remediationEffort, formatMandays(p.mandays),
-              p.jdk8, p.jdk21, p.status, p.plan, p.remediation, p.scriptable
-          );
-          matchSn.incrementAndGet();
-        }
-      }
-    } catch (IOException e) {
-      System.err.println("[ERROR] Failed to scan file: " + file + " - " + e.getMessage());
-    }
-  }
-
-  private static String formatMandays(String m) {
-    if (m == null || m.trim().isEmpty()) return "";
-    try {
-      double d = Double.parseDouble(m.trim());
-      DecimalFormat df = new DecimalFormat("0.00");
-      return df.format(d);
-    } catch (NumberFormatException ex) { return m; }
-  }
-
-  private static String detectFileType(Path file) {
-    String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
-    if (name.endsWith(".java")) return "JAVA";
-    if (name.endsWith(".jsp") || name.endsWith(".jspf")) return "JSP";
-    if (name.endsWith(".tag") || name.endsWith(".tagx")) return "TAG";
-    if (name.endsWith(".xsl") || name.endsWith(".xslt")) return "XSL";
-    if (name.endsWith(".xml")) return "XML";
-    if (name.endsWith(".properties")) return "PROPERTIES";
-    if (name.endsWith(".yml") || name.endsWith(".yaml")) return "YAML";
-    if (name.endsWith(".bat") || name.endsWith(".cmd")) return "BATCH";
-    if (name.endsWith(".sh")) return "SHELL";
-    if (name.endsWith(".gradle") || name.endsWith(".kts")) return "GRADLE";
-    if (name.endsWith(".pom") || name.endsWith(".ivy")) return "BUILDXML";
-    if (name.endsWith(".conf") || name.endsWith(".cfg")) return "CONF";
-    return "OTHER";
-  }
-
-  private static String relativeFromFpmsSrc(Path file) {
-    String abs = file.toAbsolutePath().toString().replace('/', '\\');
-    String lower = abs.toLowerCase(Locale.ROOT);
-    int idx = lower.indexOf("fpms-src\\");
-    if (idx >= 0) return abs.substring(idx);
-    idx = lower.indexOf("fpms-src");
-    if (idx >= 0) return abs.substring(idx);
-    return abs;
-  }
-
-  private static String readContentWithFallback(Path file) throws IOException {
-    try { return Files.readString(file, StandardCharsets.UTF_8); }
-    catch (MalformedInputException ex) {
-      CharsetDecoder dec = Charset.forName("windows-1252").newDecoder()
-        .onMalformedInput(CodingErrorAction.REPLACE)
-        .onUnmappableCharacter(CodingErrorAction.REPLACE);
-      try (BufferedReader br = new BufferedReader(new InputStreamReader(Files.newInputStream(file), dec))) {
-        StringBuilder sb = new StringBuilder((int)Math.min(Files.size(file), 1_000_000L));
-        String line; while ((line = br.readLine()) != null) sb.append(line).append('\n');
-        return sb.toString();
-      }
-    }
-  }
-
-  private static int[] computeLineOffsets(String content) {
-    ArrayList<Integer> offs = new ArrayList<>();
-    offs.add(0);
-    int len = content.length();
-    for (int i = 0; i < len; i++) if (content.charAt(i) == '\n') offs.add(i + 1);
-    offs.add(len + 1);
-    int[] arr = new int[offs.size()];
-    for (int i = 0; i < offs.size(); i++) arr[i] = offs.get(i);
-    return arr;
-  }
-
-  private static int lineNumberFromOffset(int[] lineOffsets, int pos) {
-    int lo = 0, hi = lineOffsets.length - 1;
-    while (lo <= hi) {
-      int mid = (lo + hi) >>> 1;
-      int v = lineOffsets[mid];
-      if (v == pos) return mid + 1;
-      if (v < pos) lo = mid + 1; else hi = mid - 1;
-    }
-    return Math.max(1, hi + 1);
-  }
-
-  private static String sanitizeSnippet(String s, int maxLen) {
-    if (s == null) return "";
-    String t = s.replace("\r\n", " ").replace('\n', ' ').replace('\r', ' ').trim();
-    if (t.length() <= maxLen) return t;
-    int keep = Math.max(20, maxLen / 2);
-    return t.substring(0, maxLen - keep - 5) + " ... " + t.substring(t.length() - keep);
-  }
-
-  private static void writeCsvRow(BufferedWriter out,
-    String applicationName,
-    String patternID, String patternName, String patternSet, String patternNature, String patternDescription,
-    String lineNo, String fileType, String filePathName,
-    String foundContent, String fix, String remediationDescription, String remediationEffort, String mandays,
-    String jdk8, String jdk21, String status, String plan, String remediation, String scriptable
-  ) throws IOException {
-    out.write(csv(applicationName)); out.write(',');
-    out.write(csv(patternID)); out.write(',');
-    out.write(csv(patternName)); out.write(',');
-    out.write(csv(patternSet)); out.write(',');
-    out.write(csv(patternNature)); out.write(',');
-    out.write(csv(patternDescription)); out.write(',');
-    out.write(csv(lineNo)); out.write(',');
-    out.write(csv(fileType)); out.write(',');
-    out.write(csv(filePathName)); out.write(',');
-    out.write(csv(foundContent)); out.write(',');
-    out.write(csv(fix)); out.write(',');
-    out.write(csv(remediationDescription)); out.write(',');
-    out.write(csv(remediationEffort)); out.write(',');
-    out.write(csv(mandays)); out.write(',');
-    out.write(csv(jdk8)); out.write(',');
-    out.write(csv(jdk21)); out.write(',');
-    out.write(csv(status)); out.write(',');
-    out.write(csv(plan)); out.write(',');
-    out.write(csv(remediation)); out.write(',');
-    out.write(csv(scriptable));
-    out.newLine();
-  }
-
-  private static String csv(String val) {
-    if (val == null) val = "";
-    String v = val;
-    if (v.contains("\"")) v = v.replace("\"", "\"\"");
-    boolean needsQuote = v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.startsWith(" ") || v.endsWith(" ");
-    return needsQuote ? '"' + v + '"' : v;
-  }
-
-  private static boolean isFlag(String s) { return s != null && s.startsWith("--"); }
-  private static String notEmpty(String s) { return (s != null && !s.trim().isEmpty()) ? s : null; }
-  private static String notEmpty(String s, String def) { return (s != null && !s.trim().isEmpty()) ? s : def; }
-
-  static class PatternEntry {
-    final String patternID;
-    final String patternSet;
-    final String patternNature;
-    final String patternName;
-    final String patternDescription;
-    final String regex;
-    final String fix;
-    final String remediation;
-    final String remediationDescription;
-    final String remediationEffort;
-    final String mandays;
-    final String jdk8;
-    final String jdk21;
-    final String status;
-    final String plan;
-    final String scriptable;
-    final Pattern compiled;
-    PatternEntry(String patternID, String patternSet, String patternNature,
-                 String patternName, String patternDescription,
-                 String regex, String fix,
-                 String remediation, String remediationDescription, String remediationEffort, String mandays,
-                 String jdk8, String jdk21, String status, String plan, String scriptable,
-                 Pattern compiled) {
-      this.patternID = patternID;
-      this.patternSet = patternSet;
-      this.patternNature = patternNature;
-      this.patternName = patternName;
-      this.patternDescription = patternDescription;
-      this.regex = regex;
-      this.fix = fix;
-      this.remediation = remediation;
-      this.remediationDescription = remediationDescription;
-      this.remediationEffort = remediationEffort;
-      this.mandays = mandays;
-      this.jdk8 = jdk8;
-      this.jdk21 = jdk21;
-      this.status = status;
-      this.plan = plan;
-      this.scriptable = scriptable;
-      this.compiled = compiled;
-    }
-  }
+  private static final String OUT_CSV = "output.csv";
+  private static final String OUT_COLUMNAR = "output.cols";
+  private static final String PROFILE_CSV = "pattern_profile.csv";
+  private static final String TIMEOUTS_CSV = "regex_timeouts.csv";
+  private static final int DEFAULT_DAEMON_PORT = 8765;
+  // Extended header (includes PatternName and new compatibility fields)
+  private static final String CSV_HEADER = "ApplicationName,PatternID,PatternName,PatternSet,PatternNature,PatternDescription,LineNo,FileType,FilePathName,FoundContent,Fix,RemediationDescription,RemediationEffort,Mandays,JDK8Compatible,JDK21Compatible,CompatibilityStatus,PlanFirstChange,Remediation,ScriptableBySearchReplace";
+  private static final int REGEX_FLAGS = Pattern.MULTILINE | Pattern.DOTALL | Pattern.CASE_INSENSITIVE; // added CI
+  private static final int SNIPPET_MAX_LEN = 300;
+
+  private static final String[] DEFAULT_EXCLUDES = new String[]{".git", ".svn", ".hg"};
+
+  private static final String[] DEFAULT_EXTS = new String[]{
+    ".java", ".jsp", ".jspf", ".tag", ".tagx", ".xsl", ".xslt",
+    ".xml", ".properties", ".yml", ".yaml", ".bat", ".cmd", ".sh",
+    ".gradle", ".kts", ".pom", ".ivy", ".conf", ".cfg"
+  };
+
+  public static void main(String[] args) throws IOException {
+    if (args.length >= 2 && "--toCsv".equalsIgnoreCase(args[0])) {
+      Path target = Paths.get(args.length >= 3 ? args[2] : OUT_CSV);
+      FindingsStore store = FindingsStore.read(Paths.get(args[1]));
+      store.writeCsv(target);
+      System.out.println("[INFO] " + store.size() + " findings converted, CSV written: " + target);
+      return;
+    }
+    if (args.length < 2) {
+      System.out.println("Usage: java JdkMigrationScanner <patterns.csv> <javaSrcDir> [jspSrcDir] [applicationName] [--exts=.java,.jsp,...] [--threads=N] [--incremental=<cacheDir>] [--profile] [--regexTimeoutMs=N] [--noPatternSnapshot] [--exclude=glob,...] [--format=csv|columnar|both] [--daemon[=port]] [--bytecode] [--depGraph=<file>] [--debug]");
+      return;
+    }
+
+    final String csvFile = args[0];
+    final String javaSrcDir = args[1];
+    String jspSrcDir = null;
+    String applicationName = "UnknownApp";
+
+    int argi = 2;
+    if (args.length >= 3) {
+      if (argi < args.length && !isFlag(args[argi])) {
+        jspSrcDir = notEmpty(args[argi]);
+        argi++;
+      }
+      if (argi < args.length && !isFlag(args[argi])) {
+        applicationName = notEmpty(args[argi], applicationName);
+        argi++;
+      }
+    }
+
+    // Flags
+    boolean debug = false;
+    boolean profile = false;
+    boolean patternSnapshot = true;
+    boolean bytecode = false;
+    int threads = Runtime.getRuntime().availableProcessors();
+    String cacheDir = null;
+    String depGraph = null;
+    long regexTimeoutMs = 0;
+    int daemonPort = -1;
+    String format = "csv";
+    Set<String> exts = new LinkedHashSet<>();
+    List<String> excludes = new ArrayList<>(Arrays.asList(DEFAULT_EXCLUDES));
+    while (argi < args.length) {
+      String a = args[argi++];
+      if ("--debug".equalsIgnoreCase(a)) { debug = true; continue; }
+      if ("--profile".equalsIgnoreCase(a)) { profile = true; continue; }
+      if ("--noPatternSnapshot".equalsIgnoreCase(a)) { patternSnapshot = false; continue; }
+      if ("--bytecode".equalsIgnoreCase(a)) { bytecode = true; continue; }
+      if (a != null && a.startsWith("--threads=")) {
+        try { threads = Math.max(1, Integer.parseInt(a.substring("--threads=".length()).trim())); }
+        catch (NumberFormatException ex) { System.err.println("[WARN] Ignoring invalid " + a); }
+        continue;
+      }
+      if (a != null && a.startsWith("--regexTimeoutMs=")) {
+        try { regexTimeoutMs = Math.max(0, Long.parseLong(a.substring("--regexTimeoutMs=".length()).trim())); }
+        catch (NumberFormatException ex) { System.err.println("[WARN] Ignoring invalid " + a); }
+        continue;
+      }
+      if (a != null && a.startsWith("--format=")) {
+        String f = a.substring("--format=".length()).trim().toLowerCase(Locale.ROOT);
+        if (f.equals("csv") || f.equals("columnar") || f.equals("both")) format = f;
+        else System.err.println("[WARN] Ignoring invalid " + a + " (csv, columnar or both)");
+        continue;
+      }
+      if ("--daemon".equalsIgnoreCase(a)) { daemonPort = DEFAULT_DAEMON_PORT; continue; }
+      if (a != null && a.startsWith("--daemon=")) {
+        try { daemonPort = Integer.parseInt(a.substring("--daemon=".length()).trim()); }
+        catch (NumberFormatException ex) { System.err.println("[WARN] Ignoring invalid " + a); }
+        continue;
+      }
+      if (a != null && a.startsWith("--incremental=")) {
+        cacheDir = notEmpty(a.substring("--incremental=".length()).trim());
+        continue;
+      }
+      if (a != null && a.startsWith("--depGraph=")) {
+        depGraph = notEmpty(a.substring("--depGraph=".length()).trim());
+        continue;
+      }
+      if (a != null && a.startsWith("--exclude=")) {
+        for (String g : a.substring("--exclude=".length()).split("[,;]")) {
+          g = g.trim();
+          if (!g.isEmpty()) excludes.add(g);
+        }
+        continue;
+      }
+      if (a != null && a.startsWith("--exts=")) {
+        String list = a.substring("--exts=".length());
+        for (String e : list.split("[,;]")) {
+          e = e.trim();
+          if (!e.isEmpty()) {
+            if (!e.startsWith(".")) e = "." + e;
+            exts.add(e.toLowerCase(Locale.ROOT));
+          }
+        }
+      }
+    }
+    if (exts.isEmpty()) {
+      exts.addAll(Arrays.asList(DEFAULT_EXTS));
+    }
+    if (bytecode) {
+      if (cacheDir != null) System.err.println("[WARN] --incremental is not used with --bytecode");
+      if (daemonPort >= 0) System.err.println("[WARN] --daemon is not used with --bytecode");
+      cacheDir = null;
+      daemonPort = -1;
+      exts = new LinkedHashSet<>(Arrays.asList(".class", ".jar"));
+    }
+    if (depGraph != null) {
+      if (bytecode || cacheDir != null || daemonPort >= 0) {
+        System.err.println("[WARN] --bytecode, --incremental and --daemon are not used with --depGraph");
+      }
+      exts = DependencyGraph.EXTS;
+    }
+    SourceWalker walker = new SourceWalker(exts, excludes);
+    if (debug) System.out.println("[DEBUG] Excludes: " + excludes);
+
+    if (depGraph != null) {
+      List<Path> roots = new ArrayList<>();
+      for (String dir : new String[]{javaSrcDir, jspSrcDir}) {
+        if (dir == null) continue;
+        if (Files.isDirectory(Paths.get(dir))) roots.add(Paths.get(dir));
+        else System.err.println("[WARN] Source dir not found or not a directory: " + dir);
+      }
+      long start = System.nanoTime();
+      ForkJoinPool graphPool = threads > 1 ? new ForkJoinPool(threads) : null;
+      DependencyGraph graph;
+      try {
+        graph = DependencyGraph.build(roots, walker, graphPool, debug);
+      } finally {
+        if (graphPool != null) graphPool.shutdown();
+      }
+      Path target = Paths.get(depGraph);
+      graph.save(target);
+      System.out.println("[INFO] Dependency graph written: " + target + " (" + graph.nodeCount() + " files, "
+          + graph.edgeCount() + " edges, " + Files.size(target) + " bytes, "
+          + (System.nanoTime() - start) / 1_000_000 + " ms)");
+      return;
+    }
+
+    List<PatternEntry> patterns = patternSnapshot ? loadPatternSet(csvFile, debug) : loadPatterns(csvFile);
+    if (debug) System.out.println("[DEBUG] Loaded patterns: " + patterns.size());
+    if (debug) System.out.println("[DEBUG] Scan threads: " + threads);
+    Prefilter prefilter = Prefilter.build(patterns);
+    if (debug) System.out.println("[DEBUG] Prefiltered patterns: " + prefilter.filteredCount() + "/" + patterns.size()
+        + " (" + prefilter.literalCount() + " literals)");
+    ScanCache cache = cacheDir == null ? null : ScanCache.open(Paths.get(cacheDir), csvFile, patterns);
+    if (cache != null && debug) System.out.println("[DEBUG] Incremental index: " + cache.indexFile + " (" + cache.previousFileCount()
+        + " files, pattern set " + (cache.patternSetChanged() ? "changed" : "unchanged") + ")");
+
+    Profiler profiler = profile ? new Profiler(patterns) : null;
+    RegexBudget budget = regexTimeoutMs > 0 ? new RegexBudget(regexTimeoutMs) : null;
+    if (budget != null && debug) System.out.println("[DEBUG] Regex timeout per pattern and file: " + regexTimeoutMs + " ms");
+
+    ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+
+    if (daemonPort >= 0) {
+      List<Path> roots = new ArrayList<>();
+      roots.add(Paths.get(javaSrcDir));
+      if (jspSrcDir != null) roots.add(Paths.get(jspSrcDir));
+      mapLargeFiles = false;
+      ScanDaemon daemon = new ScanDaemon(roots, walker, patterns, prefilter, budget, applicationName, debug);
+      try {
+        daemon.initialScan(cache, pool);
+      } finally {
+        if (pool != null) pool.shutdown();
+      }
+      if (cache != null) cache.save();
+      daemon.writeCsv(Paths.get(OUT_CSV));
+      System.out.println("[INFO] CSV written: " + OUT_CSV);
+      daemon.run(daemonPort);
+      return;
+    }
+
+    boolean csvOut = !format.equals("columnar");
+    FindingsStore.Writer columnar = format.equals("csv") ? null : new FindingsStore.Writer(applicationName);
+    try (BufferedWriter writer = csvOut
+        ? new BufferedWriter(new OutputStreamWriter(new FileOutputStream(OUT_CSV), StandardCharsets.UTF_8)) : null) {
+      FindingSink out = columnar;
+      if (writer != null) {
+        writer.write(CSV_HEADER);
+        writer.newLine();
+        CsvRowWriter csvRows = new CsvRowWriter(writer, applicationName);
+        out = columnar == null ? csvRows : tee(csvRows, columnar);
+      }
+
+      AtomicInteger matchSn = new AtomicInteger(0);
+      Deduper seen = new Deduper();
+
+      // Java root
+      Path javaRoot = Paths.get(javaSrcDir);
+      if (bytecode && Files.exists(javaRoot)) {
+        if (debug) System.out.println("[DEBUG] Scanning classes: " + javaRoot);
+        scanBytecodeTree(javaRoot, walker, patterns, out, matchSn, seen, debug, prefilter, profiler, budget, pool);
+      } else if (Files.isDirectory(javaRoot)) {
+        if (debug) System.out.println("[DEBUG] Scanning Java root: " + javaRoot);
+        scanTree(javaRoot, walker, patterns, out, matchSn, seen, debug, prefilter, cache, profiler, budget, pool);
+      } else {
+        System.err.println("[WARN] Java source dir not found or not a directory: " + javaRoot);
+      }
+
+      // JSP/TAG/XSL root (optional); with --bytecode a second classes/jar root such as combined_lib
+      if (jspSrcDir != null) {
+        Path jspRoot = Paths.get(jspSrcDir);
+        if (bytecode && Files.exists(jspRoot)) {
+          if (debug) System.out.println("[DEBUG] Scanning classes: " + jspRoot);
+          scanBytecodeTree(jspRoot, walker, patterns, out, matchSn, seen, debug, prefilter, profiler, budget, pool);
+        } else if (Files.isDirectory(jspRoot)) {
+          if (debug) System.out.println("[DEBUG] Scanning JSP/TAG/XSL root: " + jspRoot);
+          scanTree(jspRoot, walker, patterns, out, matchSn, seen, debug, prefilter, cache, profiler, budget, pool);
+        } else {
+          System.err.println("[WARN] JSP source dir not found or not a directory: " + jspRoot);
+        }
+      }
+      if (writer != null) writer.flush();
+    } finally {
+      if (pool != null) pool.shutdown();
+    }
+    if (csvOut) System.out.println("[INFO] CSV written: " + OUT_CSV);
+    if (columnar != null) {
+      Path cols = Paths.get(OUT_COLUMNAR);
+      columnar.save(cols);
+      System.out.println("[INFO] Columnar findings written: " + cols + " (" + columnar.size() + " rows, "
+          + Files.size(cols) + " bytes)");
+    }
+    if (cache != null) {
+      cache.save();
+      System.out.println("[INFO] Incremental: " + cache.reusedFiles.get() + " files reused, " + cache.rescannedFiles.get()
+          + " files (re)scanned, index written: " + cache.indexFile);
+    }
+    if (profiler != null) {
+      Path profileCsv = Paths.get(OUT_CSV).toAbsolutePath().resolveSibling(PROFILE_CSV);
+      profiler.write(profileCsv);
+      System.out.println("[INFO] Pattern profile written: " + profileCsv);
+      if (cache != null && cache.reusedFiles.get() > 0) {
+        System.out.println("[INFO] Profile only covers (re)scanned files; rows reused from the incremental index are not timed.");
+      }
+    }
+    if (budget != null) {
+      Path timeoutsCsv = Paths.get(OUT_CSV).toAbsolutePath().resolveSibling(TIMEOUTS_CSV);
+      int n = budget.write(timeoutsCsv);
+      if (n > 0) System.out.println("[WARN] " + n + " regex timeouts (over " + regexTimeoutMs + " ms), see: " + timeoutsCsv);
+      else System.out.println("[INFO] No regex timeouts (budget " + regexTimeoutMs + " ms), written: " + timeoutsCsv);
+    }
+  }
+
+  // Pattern set via the snapshot next to the CSV; parses the CSV (and rewrites the snapshot) when the CSV changed
+  static List<PatternEntry> loadPatternSet(String csvFile, boolean debug) throws IOException {
+    Path csv = Paths.get(csvFile);
+    Path snapshot = PatternSnapshot.fileFor(csv);
+    String csvHash = PatternSnapshot.hash(csv);
+    List<PatternEntry> patterns = PatternSnapshot.load(snapshot, csvHash);
+    if (patterns != null) {
+      if (debug) System.out.println("[DEBUG] Patterns loaded from snapshot: " + snapshot);
+      return patterns;
+    }
+    List<String> warnings = new ArrayList<>();
+    patterns = loadPatterns(csvFile, warnings);
+    PatternSnapshot.save(snapshot, csvHash, patterns, warnings);
+    if (debug) System.out.println("[DEBUG] Pattern snapshot written: " + snapshot);
+    return patterns;
+  }
+
+  static List<PatternEntry> loadPatterns(String csvFile) throws IOException {
+    return loadPatterns(csvFile, null);
+  }
+
+  // Pattern loader (header-driven). Skipped-row warnings are printed and, if `warnings` is given, collected.
+  static List<PatternEntry> loadPatterns(String csvFile, List<String> warnings) throws IOException {
+    List<PatternEntry> patterns = new ArrayList<>();
+    try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8))) {
+      String header = br.readLine();
+      if (header == null) return patterns;
+      String[] headers = splitCsv(header);
+      Map<String, Integer> idx = headerIndex(headers);
+
+      Integer ixPatternID = idx.get("patternid");
+      Integer ixPatternSet = idx.get("patternset");
+      Integer ixPatternNature = idx.get("patternnature");
+      Integer ixPatternName = idx.get("patternname");
+      Integer ixPatternDesc = idx.get("patterndescription");
+      Integer ixRegex = idx.get("regexpattern");
+      Integer ixFix = idx.get("fix");
+      Integer ixRem = idx.get("remediation");
+      Integer ixRemDesc = idx.get("remediationdescription");
+      Integer ixRemEffort = idx.get("remediationeffort");
+      Integer ixMandays = idx.get("mandays");
+      Integer ixJ8 = idx.get("jdk8compatible");
+      Integer ixJ21 = idx.get("jdk21compatible");
+      Integer ixStatus = idx.get("compatibilitystatus");
+      Integer ixPlan = idx.get("planfirstchange");
+      Integer ixScriptable = idx.get("scriptablebysearchreplace");
+      Integer ixLiterals = idx.get("prefilterliterals");
+
+      if (ixPatternID == null || ixPatternName == null || ixRegex == null) {
+        throw new IOException("Required headers missing. Need: PatternID, PatternName, RegexPattern");
+      }
+
+      String line;
+      while ((line = br.readLine()) != null) {
+        if (line.trim().isEmpty()) continue;
+        String[] parts = splitCsv(line);
+        String patternID = safeGet(parts, ixPatternID);
+        String patternSet = safeGet(parts, ixPatternSet);
+        String patternNature = safeGet(parts, ixPatternNature);
+        String patternName = safeGet(parts, ixPatternName);
+        String patternDesc = safeGet(parts, ixPatternDesc);
+        String regex = safeGet(parts, ixRegex);
+        String fix = safeGet(parts, ixFix);
+        String remediation = safeGet(parts, ixRem);
+        String remDesc = safeGet(parts, ixRemDesc);
+        String remEffort = safeGet(parts, ixRemEffort);
+        String mandays = safeGet(parts, ixMandays);
+        String j8 = safeGet(parts, ixJ8);
+        String j21 = safeGet(parts, ixJ21);
+        String status = safeGet(parts, ixStatus);
+        String plan = safeGet(parts, ixPlan);
+        String scriptable = safeGet(parts, ixScriptable);
+        String[] literals = LiteralExtractor.fromColumn(safeGet(parts, ixLiterals));
+        if (patternID.isEmpty() || patternName.isEmpty() || regex.isEmpty()) continue;
+        try {
+          Pattern compiled = Pattern.compile(regex, REGEX_FLAGS);
+          patterns.add(new PatternEntry(patternID, patternSet, patternNature, patternName, patternDesc,
+              regex, fix, remediation, remDesc, remEffort, mandays,
+              j8, j21, status, plan, scriptable, compiled, literals != null ? literals : LiteralExtractor.extract(regex)));
+        } catch (PatternSyntaxException ex) {
+          String warning = "[WARN] Skipping invalid regex (" + patternID + " - " + patternName + "): " + ex.getMessage();
+          System.err.println(warning);
+          if (warnings != null) warnings.add(warning);
+        }
+      }
+    }
+    assignDedupeIds(patterns);
+    return patterns;
+  }
+
+  // Rows sharing a PatternID are one finding per offset, whichever row matched it
+  static void assignDedupeIds(List<PatternEntry> patterns) {
+    Map<String, Integer> ids = new HashMap<>();
+    for (PatternEntry p : patterns) {
+      Integer id = ids.get(p.patternID);
+      if (id == null) { id = ids.size(); ids.put(p.patternID, id); }
+      p.dedupeId = id;
+    }
+  }
+
+  private static Map<String, Integer> headerIndex(String[] headers) {
+    Map<String, Integer> idx = new HashMap<>();
+    for (int i = 0; i < headers.length; i++) {
+      String h = headers[i] == null ? "" : headers[i].trim().replace("\"", "").toLowerCase(Locale.ROOT);
+      switch (h) {
+        case "patternid": case "pattern id": case "id": idx.put("patternid", i); break;
+        case "patternset": case "pattern set": case "set": idx.put("patternset", i); break;
+        case "patternnature": case "pattern nature": case "nature": idx.put("patternnature", i); break;
+        case "patternname": case "pattern name": case "name": idx.put("patternname", i); break;
+        case "patterndescription": case "pattern description": case "description": idx.put("patterndescription", i); break;
+        case "regex pattern": case "regexpattern": case "regex": case "pattern": idx.put("regexpattern", i); break;
+        case "fix": case "recommendedfix": case "resolution": idx.put("fix", i); break;
+        case "remediation": case "resolutiontype": idx.put("remediation", i); break;
+        case "remediationdescription": case "remediation description": idx.put("remediationdescription", i); break;
+        case "remediationeffort": case "remediation effort": idx.put("remediationeffort", i); break;
+        case "mandays": idx.put("mandays", i); break;
+        case "jdk8compatible": case "jdk8": idx.put("jdk8compatible", i); break;
+        case "jdk21compatible": case "jdk21": idx.put("jdk21compatible", i); break;
+        case "compatibilitystatus": case "status": idx.put("compatibilitystatus", i); break;
+        case "planfirstchange": case "plan": idx.put("planfirstchange", i); break;
+        case "scriptablebysearchreplace": case "scriptable": idx.put("scriptablebysearchreplace", i); break;
+        case "prefilterliterals": case "prefilter literals": idx.put("prefilterliterals", i); break;
+        default: /* ignore */
+      }
+    }
+    return idx;
+  }
+
+  static String[] splitCsv(String line) {
+    return line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
+  }
+  private static String safeGet(String[] parts, Integer ix) {
+    if (ix == null || ix < 0 || ix >= parts.length) return "";
+    String t = parts[ix].trim();
+    if (t.length() >= 2 && t.startsWith("\"") && t.endsWith("\"")) {
+      t = t.substring(1, t.length() - 1);
+    }
+    return t;
+  }
+
+  static void scanTree(Path root, SourceWalker walker, List<PatternEntry> patterns, FindingSink out, AtomicInteger matchSn,
+                       Deduper seen, boolean debug, Prefilter prefilter, ScanCache cache, Profiler profiler,
+                       RegexBudget budget, ForkJoinPool pool) throws IOException {
+    if (pool == null) {
+      walker.walk(root, (p, attrs) -> writeFileScan(matchFile(p, attrs, patterns, prefilter, cache, profiler, budget),
+          out, matchSn, seen, debug));
+      return;
+    }
+
+    // Parallel: workers match files on the pool, this thread writes results back in walk order.
+    // At most `window` files are in flight so memory stays bounded on big trees.
+    final int window = pool.getParallelism() * 4;
+    Deque<ForkJoinTask<FileScan>> inFlight = new ArrayDeque<>();
+    try {
+      walker.walk(root, (p, attrs) -> {
+        inFlight.addLast(pool.submit(() -> matchFile(p, attrs, patterns, prefilter, cache, profiler, budget)));
+        if (inFlight.size() >= window) writeFileScan(join(inFlight.removeFirst()), out, matchSn, seen, debug);
+      });
+      while (!inFlight.isEmpty()) writeFileScan(join(inFlight.removeFirst()), out, matchSn, seen, debug);
+    } finally {
+      for (ForkJoinTask<FileScan> t : inFlight) t.cancel(true);
+    }
+  }
+
+  private static <T> T join(ForkJoinTask<T> task) throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Scan interrupted");
+    } catch (ExecutionException e) {
+      throw new IOException("Scan worker failed: " + e.getCause(), e.getCause());
+    }
+  }
+
+  static void scanFile(Path file, List<PatternEntry> patterns, FindingSink out, AtomicInteger matchSn,
+                       Deduper seen, boolean debug, Prefilter prefilter, ScanCache cache, Profiler profiler,
+                       RegexBudget budget) {
+    writeFileScan(matchFile(file, null, patterns, prefilter, cache, profiler, budget), out, matchSn, seen, debug);
+  }
+
+  // Matching half of scanFile: no shared state, safe to run on any worker thread.
+  // With a cache, hits of patterns already run against identical file content are reused instead of re-matched.
+  // With a profiler, every matcher run is timed (reused and prefiltered-out patterns cost nothing and are not timed).
+  // With a budget, a matcher run over the time limit is aborted; its partial hits are kept but never cached.
+  // `attrs` are the walker's attributes of the file (saves the cache's size/mtime stats), or null.
+  static FileScan matchFile(Path file, BasicFileAttributes attrs, List<PatternEntry> patterns, Prefilter prefilter,
+                            ScanCache cache, Profiler profiler, RegexBudget budget) {
+    FileScan fs = new FileScan(file);
+    try {
+      fs.filePathName = relativeFromFpmsSrc(file);
+      fs.fileKey = fileKey(file, attrs);
+      fs.fileType = detectFileType(file);
+
+      String cacheKey = null;
+      long size = 0, mtime = 0;
+      ScanCache.Entry prev = null;
+      ByteBuffer bytes = null;
+      byte[] hash = null;
+      if (cache != null) {
+        cacheKey = ScanCache.key(file);
+        size = attrs != null ? attrs.size() : Files.size(file);
+        mtime = (attrs != null ? attrs.lastModifiedTime() : Files.getLastModifiedTime(file)).toMillis();
+        prev = cache.get(cacheKey);
+        if (prev != null && (prev.size != size || prev.mtime != mtime)) {
+          // Touched: only a content change invalidates the cached rows
+          bytes = readBytes(file);
+          hash = ScanCache.sha256(bytes);
+          if (!Arrays.equals(hash, prev.hash)) prev = null;
+        }
+      }
+
+      CharSequence content = null;
+      int[] lineOffsets = null;
+      boolean[] candidates = null;
+      long fileBytes = 0;
+      DeadlineCharSequence guarded = null;
+      Map<String, List<Hit>> hitsByFingerprint = cache == null ? null : new HashMap<>();
+      for (int pi = 0; pi < patterns.size(); pi++) {
+        PatternEntry p = patterns.get(pi);
+        String fp = cache == null ? null : cache.fingerprint(pi);
+        List<Hit> reuse = prev == null ? null : prev.hits.get(fp);
+        if (reuse != null) {
+          for (Hit h : reuse) fs.hits.add(new Hit(p, h.lineNo, h.start, h.snippet));
+          hitsByFingerprint.put(fp, reuse);
+          continue;
+        }
+        if (content == null) {
+          if (bytes == null) bytes = readBytes(file);
+          fileBytes = bytes.remaining();
+          content = decode(bytes);
+          lineOffsets = computeLineOffsets(content);
+          candidates = prefilter.candidates(content);
+          if (budget != null) guarded = new DeadlineCharSequence(content);
+        }
+        List<Hit> found = new ArrayList<>();
+        boolean complete = matchPattern(pi, p, candidates[pi], content, guarded, lineOffsets, fs.filePathName,
+            fileBytes, profiler, budget, found);
+        fs.hits.addAll(found);
+        if (cache != null && complete) hitsByFingerprint.put(fp, found);
+      }
+
+      if (cache != null) {
+        if (hash == null && prev != null) hash = prev.hash;
+        if (hash == null && bytes != null) hash = ScanCache.sha256(bytes);
+        // Still none: no pattern needed the content (empty or fully filtered pattern set), nothing to cache
+        if (hash != null) {
+          cache.put(cacheKey, new ScanCache.Entry(size, mtime, hash, hitsByFingerprint));
+          (content == null ? cache.reusedFiles : cache.rescannedFiles).incrementAndGet();
+        }
+      }
+    } catch (IOException e) {
+      fs.error = e;
+    }
+    return fs;
+  }
+
+  // One pattern over one file's content into `found`; false when the budget aborted it (the hits so far are kept).
+  // `guarded` wraps `content` when there is a budget. Prefiltered-out patterns only count as skipped in the profile.
+  private static boolean matchPattern(int pi, PatternEntry p, boolean candidate, CharSequence content,
+                                      DeadlineCharSequence guarded, int[] lineOffsets, String filePathName,
+                                      long fileBytes, Profiler profiler, RegexBudget budget, List<Hit> found) {
+    if (!candidate) {
+      if (profiler != null) profiler.skipped(pi);
+      return true;
+    }
+    boolean complete = true;
+    long t0 = profiler == null && budget == null ? 0 : System.nanoTime();
+    Matcher m;
+    if (guarded != null) {
+      guarded.arm(t0 + budget.nanos);
+      m = p.compiled.matcher(guarded);
+    } else {
+      m = p.compiled.matcher(content);
+    }
+    try {
+      while (m.find()) {
+        int start = m.start();
+        int lineNo = lineNumberFromOffset(lineOffsets, start);
+        found.add(new Hit(p, lineNo, start, sanitizeSnippet(m.group(), SNIPPET_MAX_LEN)));
+      }
+    } catch (RegexTimeoutException ex) {
+      complete = false;
+      budget.timedOut(p, filePathName, fileBytes, System.nanoTime() - t0,
+          lineNumberFromOffset(lineOffsets, ex.position), found.size(), ex.interrupted);
+    }
+    if (profiler != null) profiler.record(pi, System.nanoTime() - t0, fileBytes, found.size(), filePathName);
+    return complete;
+  }
+
+  // Output half of scanFile: dedupes against `seen` and writes rows, always from a single thread.
+  static void writeFileScan(FileScan fs, FindingSink out, AtomicInteger matchSn,
+                            Deduper seen, boolean debug) {
+    try {
+      if (fs.error != null) throw fs.error;
+      if (!seen.startFile(fs.fileKey)) return; // same file already written via the other root
+      out.startFile(fs.fileType, fs.filePathName);
+      for (Hit h : fs.hits) {
+        PatternEntry p = h.pattern;
+        if (!seen.firstHit(p.dedupeId, h.start)) continue;
+        if (debug) {
+          System.out.println("Match: [" + p.patternID + "] " + p.patternName + " in " + fs.filePathName + ":" + h.lineNo);
+        }
+        out.writeRow(p, h.lineNo, h.snippet);
+        matchSn.incrementAndGet();
+      }
+    } catch (IOException e) {
+      System.err.println("[ERROR] Failed to scan file: " + fs.file + " - " + e.getMessage());
+    }
+  }
+
+  // --bytecode: `root` is a directory of .class files and jars, or a single jar. Every class is matched through its
+  // ClassListing; jars are one unit of work each (all their classes), written back in walk order like scanTree.
+  static void scanBytecodeTree(Path root, SourceWalker walker, List<PatternEntry> patterns, FindingSink out,
+                               AtomicInteger matchSn, Deduper seen, boolean debug, Prefilter prefilter,
+                               Profiler profiler, RegexBudget budget, ForkJoinPool pool) throws IOException {
+    if (pool == null) {
+      SourceWalker.FileSink sink = (p, attrs) -> {
+        for (FileScan fs : matchBytecode(p, patterns, prefilter, profiler, budget)) writeFileScan(fs, out, matchSn, seen, debug);
+      };
+      if (Files.isRegularFile(root)) sink.accept(root, null); else walker.walk(root, sink);
+      return;
+    }
+
+    final int window = pool.getParallelism() * 4;
+    Deque<ForkJoinTask<List<FileScan>>> inFlight = new ArrayDeque<>();
+    try {
+      SourceWalker.FileSink sink = (p, attrs) -> {
+        inFlight.addLast(pool.submit(() -> matchBytecode(p, patterns, prefilter, profiler, budget)));
+        if (inFlight.size() >= window) {
+          for (FileScan fs : join(inFlight.removeFirst())) writeFileScan(fs, out, matchSn, seen, debug);
+        }
+      };
+      if (Files.isRegularFile(root)) sink.accept(root, null); else walker.walk(root, sink);
+      while (!inFlight.isEmpty()) {
+        for (FileScan fs : join(inFlight.removeFirst())) writeFileScan(fs, out, matchSn, seen, debug);
+      }
+    } finally {
+      for (ForkJoinTask<List<FileScan>> t : inFlight) t.cancel(true);
+    }
+  }
+
+  // One FileScan per class: the class file itself, or every class of a jar (FilePathName "<jar>!/<entry>").
+  // References between classes of the same jar are not reported.
+  static List<FileScan> matchBytecode(Path file, List<PatternEntry> patterns, Prefilter prefilter,
+                                      Profiler profiler, RegexBudget budget) {
+    String path = relativeFromFpmsSrc(file);
+    if (!file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".jar")) {
+      FileScan fs = new FileScan(file);
+      fs.filePathName = path;
+      fs.fileType = "CLASS";
+      try {
+        fs.fileKey = fileKey(file, null);
+        matchClass(fs, Files.readAllBytes(file), Collections.<String>emptySet(), patterns, prefilter, profiler, budget);
+      } catch (IOException e) {
+        fs.error = e;
+      }
+      return Collections.singletonList(fs);
+    }
+
+    List<FileScan> scans = new ArrayList<>();
+    try (java.util.zip.ZipFile zip = new java.util.zip.ZipFile(file.toFile())) {
+      Object jarKey = fileKey(file, null);
+      List<java.util.zip.ZipEntry> classes = new ArrayList<>();
+      Set<String> own = new HashSet<>();
+      for (Enumeration<? extends java.util.zip.ZipEntry> en = zip.entries(); en.hasMoreElements(); ) {
+        java.util.zip.ZipEntry e = en.nextElement();
+        String name = e.getName();
+        if (e.isDirectory() || !name.endsWith(".class")) continue;
+        classes.add(e);
+        own.add(name.substring(0, name.length() - 6).replaceFirst("^META-INF/versions/\\d+/", ""));
+      }
+      for (java.util.zip.ZipEntry e : classes) {
+        FileScan fs = new FileScan(file);
+        fs.filePathName = path + "!/" + e.getName();
+        fs.fileKey = jarKey + "!/" + e.getName();
+        fs.fileType = "CLASS";
+        try (InputStream in = zip.getInputStream(e)) {
+          matchClass(fs, readFully(in), own, patterns, prefilter, profiler, budget);
+        } catch (IOException ex) {
+          fs.error = new IOException(e.getName() + ": " + ex.getMessage(), ex);
+        }
+        scans.add(fs);
+      }
+    } catch (IOException e) {
+      FileScan fs = new FileScan(file);
+      fs.filePathName = path;
+      fs.fileType = "CLASS";
+      fs.error = e;
+      scans.add(fs);
+    }
+    return scans;
+  }
+
+  // Patterns over the class's listing; LineNo becomes the constant-pool index of the matched line
+  private static void matchClass(FileScan fs, byte[] classBytes, Set<String> sameJar, List<PatternEntry> patterns,
+                                 Prefilter prefilter, Profiler profiler, RegexBudget budget) throws IOException {
+    ClassListing listing = ClassListing.parse(classBytes, sameJar);
+    if (listing.text.isEmpty()) return;
+    CharSequence content = listing.text;
+    int[] lineOffsets = computeLineOffsets(content);
+    boolean[] candidates = prefilter.candidates(content);
+    DeadlineCharSequence guarded = budget != null ? new DeadlineCharSequence(content) : null;
+    List<Hit> found = new ArrayList<>();
+    for (int pi = 0; pi < patterns.size(); pi++) {
+      PatternEntry p = patterns.get(pi);
+      found.clear();
+      matchPattern(pi, p, candidates[pi], content, guarded, lineOffsets, fs.filePathName, classBytes.length,
+          profiler, budget, found);
+      for (Hit h : found) {
+        // A match at the very end of the text ($, \s*) is on the line after the last '\n'
+        int line = Math.min(h.lineNo - 1, listing.cpIndexByLine.length - 1);
+        fs.hits.add(new Hit(p, listing.cpIndexByLine[line], h.start, h.snippet));
+      }
+    }
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    for (int n; (n = in.read(chunk)) > 0; ) buf.write(chunk, 0, n);
+    return buf.toByteArray();
+  }
+
+  private static String formatMandays(String m) {
+    if (m == null || m.trim().isEmpty()) return "";
+    try {
+      double d = Double.parseDouble(m.trim());
+      DecimalFormat df = new DecimalFormat("0.00");
+      return df.format(d);
+    } catch (NumberFormatException ex) { return m; }
+  }
+
+  private static String detectFileType(Path file) {
+    String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+    if (name.endsWith(".java")) return "JAVA";
+    if (name.endsWith(".jsp") || name.endsWith(".jspf")) return "JSP";
+    if (name.endsWith(".tag") || name.endsWith(".tagx")) return "TAG";
+    if (name.endsWith(".xsl") || name.endsWith(".xslt")) return "XSL";
+    if (name.endsWith(".xml")) return "XML";
+    if (name.endsWith(".properties")) return "PROPERTIES";
+    if (name.endsWith(".yml") || name.endsWith(".yaml")) return "YAML";
+    if (name.endsWith(".bat") || name.endsWith(".cmd")) return "BATCH";
+    if (name.endsWith(".sh")) return "SHELL";
+    if (name.endsWith(".gradle") || name.endsWith(".kts")) return "GRADLE";
+    if (name.endsWith(".pom") || name.endsWith(".ivy")) return "BUILDXML";
+    if (name.endsWith(".conf") || name.endsWith(".cfg")) return "CONF";
+    return "OTHER";
+  }
+
+  private static String relativeFromFpmsSrc(Path file) {
+    String abs = file.toAbsolutePath().toString().replace('/', '\\');
+    String lower = abs.toLowerCase(Locale.ROOT);
+    int idx = lower.indexOf("fpms-src\\");
+    if (idx >= 0) return abs.substring(idx);
+    idx = lower.indexOf("fpms-src");
+    if (idx >= 0) return abs.substring(idx);
+    return abs;
+  }
+
+  // Identity of a file across roots for the Deduper: the file system's key (device + inode) where it has one, else the
+  // real path (NTFS has no fileKey). Not FilePathName: that is only the fpms-src suffix, shared by unrelated files.
+  // Without walker attributes they are read here, so a file gets the same key whichever way it was reached.
+  static Object fileKey(Path file, BasicFileAttributes attrs) throws IOException {
+    if (attrs == null) attrs = Files.readAttributes(file, BasicFileAttributes.class);
+    Object key = attrs.fileKey();
+    return key != null ? key : file.toRealPath().toString();
+  }
+
+  // Files at or above this size are memory-mapped instead of read onto the heap
+  private static final long MMAP_THRESHOLD = 1L << 20;
+  // Off in --daemon: a mapping is only released by GC, and on Windows a mapped file cannot be saved over meanwhile
+  static volatile boolean mapLargeFiles = true;
+  private static final char[] CP1252 = cp1252Table();
+
+  // Reads the bytes once (mapped when large) and decides the charset in the same pass: pure ASCII and
+  // windows-1252 are served as a zero-copy CharSequence over the bytes, so char offsets are byte offsets;
+  // only real UTF-8 is decoded. Line endings are never rewritten.
+  static CharSequence readContentWithFallback(Path file) throws IOException {
+    return decode(readBytes(file));
+  }
+
+  private static ByteBuffer readBytes(Path file) throws IOException {
+    ByteBuffer bytes;
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = ch.size();
+      if (size > Integer.MAX_VALUE) throw new IOException("File too large to scan: " + size + " bytes");
+      if (size >= MMAP_THRESHOLD && mapLargeFiles) {
+        bytes = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      } else {
+        // From the channel already open: a second open per file is what costs on network drives
+        bytes = ByteBuffer.allocate((int) size);
+        while (bytes.hasRemaining()) {
+          if (ch.read(bytes) < 0) break; // shrank since size()
+        }
+        bytes.flip();
+      }
+    }
+    return bytes;
+  }
+
+  private static CharSequence decode(ByteBuffer bytes) {
+    switch (classifyUtf8(bytes)) {
+      case ASCII: return new ByteCharSequence(bytes, 0, bytes.limit(), null);
+      case UTF8: return StandardCharsets.UTF_8.decode(bytes.duplicate());
+      default: return new ByteCharSequence(bytes, 0, bytes.limit(), CP1252);
+    }
+  }
+
+  private enum Encoding { ASCII, UTF8, OTHER }
+
+  // Strict UTF-8 validation (no overlongs, surrogates or code points above U+10FFFF), same rules as the JDK decoder
+  private static Encoding classifyUtf8(ByteBuffer b) {
+    boolean ascii = true;
+    int n = b.limit();
+    int i = 0;
+    while (i < n) {
+      int c = b.get(i) & 0xff;
+      if (c < 0x80) { i++; continue; }
+      ascii = false;
+      int len;
+      int lo = 0x80, hi = 0xBF; // valid range of the first continuation byte
+      if (c >= 0xC2 && c <= 0xDF) len = 2;
+      else if (c >= 0xE0 && c <= 0xEF) { len = 3; if (c == 0xE0) lo = 0xA0; else if (c == 0xED) hi = 0x9F; }
+      else if (c >= 0xF0 && c <= 0xF4) { len = 4; if (c == 0xF0) lo = 0x90; else if (c == 0xF4) hi = 0x8F; }
+      else return Encoding.OTHER;
+      if (i + len > n) return Encoding.OTHER;
+      int c1 = b.get(i + 1) & 0xff;
+      if (c1 < lo || c1 > hi) return Encoding.OTHER;
+      for (int k = 2; k < len; k++) {
+        int ck = b.get(i + k) & 0xff;
+        if (ck < 0x80 || ck > 0xBF) return Encoding.OTHER;
+      }
+      i += len;
+    }
+    return ascii ? Encoding.ASCII : Encoding.UTF8;
+  }
+
+  private static char[] cp1252Table() {
+    byte[] all = new byte[256];
+    for (int i = 0; i < 256; i++) all[i] = (byte) i;
+    try {
+      CharBuffer cb = Charset.forName("windows-1252").newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+        .decode(ByteBuffer.wrap(all));
+      char[] table = new char[256];
+      cb.get(table);
+      return table;
+    } catch (CharacterCodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // Read-only char view over single-byte text; table == null means ASCII (byte value is the char)
+  static final class ByteCharSequence implements CharSequence {
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+    private final char[] table;
+
+    ByteCharSequence(ByteBuffer bytes, int offset, int length, char[] table) {
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+      this.table = table;
+    }
+
+    @Override public int length() { return length; }
+
+    @Override public char charAt(int index) {
+      if (index < 0 || index >= length) throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+      int b = bytes.get(offset + index) & 0xff;
+      return table == null ? (char) b : table[b];
+    }
+
+    @Override public CharSequence subSequence(int start, int end) {
+      if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException(start + ".." + end);
+      return new ByteCharSequence(bytes, offset + start, end - start, table);
+    }
+
+    @Override public String toString() {
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) chars[i] = charAt(i);
+      return new String(chars);
+    }
+  }
+
+  // Matcher input for --regexTimeoutMs: every charAt counts, and every CHECK_EVERY reads the deadline and the
+  // thread's interrupt flag are checked. The regex engine reads the input only through charAt, so a backtracking
+  // loop cannot outrun the check. Match groups are cut from the unguarded content.
+  static final class DeadlineCharSequence implements CharSequence {
+    private static final int CHECK_EVERY = 4096;
+    private final CharSequence content;
+    private long deadline;
+    private int countdown = CHECK_EVERY;
+
+    DeadlineCharSequence(CharSequence content) { this.content = content; }
+
+    void arm(long deadlineNanos) {
+      deadline = deadlineNanos;
+      countdown = CHECK_EVERY;
+    }
+
+    @Override public int length() { return content.length(); }
+
+    @Override public char charAt(int index) {
+      if (--countdown <= 0) {
+        countdown = CHECK_EVERY;
+        if (Thread.currentThread().isInterrupted()) throw new RegexTimeoutException(index, true);
+        if (System.nanoTime() - deadline > 0) throw new RegexTimeoutException(index, false);
+      }
+      return content.charAt(index);
+    }
+
+    @Override public CharSequence subSequence(int start, int end) { return content.subSequence(start, end); }
+
+    @Override public String toString() { return content.toString(); }
+  }
+
+  static final class RegexTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    final int position;
+    final boolean interrupted;
+
+    RegexTimeoutException(int position, boolean interrupted) {
+      super(interrupted ? "interrupted" : "regex time budget exceeded", null, false, false);
+      this.position = Math.max(0, position);
+      this.interrupted = interrupted;
+    }
+  }
+
+  static int[] computeLineOffsets(CharSequence content) {
+    ArrayList<Integer> offs = new ArrayList<>();
+    offs.add(0);
+    int len = content.length();
+    for (int i = 0; i < len; i++) if (content.charAt(i) == '\n') offs.add(i + 1);
+    offs.add(len + 1);
+    int[] arr = new int[offs.size()];
+    for (int i = 0; i < offs.size(); i++) arr[i] = offs.get(i);
+    return arr;
+  }
+
+  static int lineNumberFromOffset(int[] lineOffsets, int pos) {
+    int lo = 0, hi = lineOffsets.length - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int v = lineOffsets[mid];
+      if (v == pos) return mid + 1;
+      if (v < pos) lo = mid + 1; else hi = mid - 1;
+    }
+    return Math.max(1, hi + 1);
+  }
+
+  private static String sanitizeSnippet(String s, int maxLen) {
+    if (s == null) return "";
+    String t = s.replace("\r\n", " ").replace('\n', ' ').replace('\r', ' ').trim();
+    if (t.length() <= maxLen) return t;
+    int keep = Math.max(20, maxLen / 2);
+    return t.substring(0, maxLen - keep - 5) + " ... " + t.substring(t.length() - keep);
+  }
+
+  // Output stage target: rows arrive grouped by file, in output order
+  interface FindingSink {
+    void startFile(String fileType, String filePathName) throws IOException;
+    void writeRow(PatternEntry p, int lineNo, String foundContent) throws IOException;
+  }
+
+  static FindingSink tee(FindingSink a, FindingSink b) {
+    return new FindingSink() {
+      @Override public void startFile(String fileType, String filePathName) throws IOException {
+        a.startFile(fileType, filePathName);
+        b.startFile(fileType, filePathName);
+      }
+
+      @Override public void writeRow(PatternEntry p, int lineNo, String foundContent) throws IOException {
+        a.writeRow(p, lineNo, foundContent);
+        b.writeRow(p, lineNo, foundContent);
+      }
+    };
+  }
+
+  // Output row writer. The 14 pattern-metadata columns are escaped once per PatternEntry (csvHead/csvTail),
+  // the file columns once per file; per hit only the line number and snippet are formatted, into a reused buffer.
+  static final class CsvRowWriter implements FindingSink {
+    private final BufferedWriter out;
+    private final String appNameCsv;
+    private char[] buf = new char[1024];
+    private int len;
+    private String fileColumnsCsv = "";
+
+    CsvRowWriter(BufferedWriter out, String applicationName) {
+      this.out = out;
+      this.appNameCsv = csv(applicationName);
+    }
+
+    @Override
+    public void startFile(String fileType, String filePathName) {
+      fileColumnsCsv = csv(fileType) + ',' + csv(filePathName);
+    }
+
+    // Same columns and escaping as the header: ApplicationName, <pattern head>, LineNo, FileType, FilePathName,
+    // FoundContent, <pattern tail>
+    @Override
+    public void writeRow(PatternEntry p, int lineNo, String foundContent) throws IOException {
+      len = 0;
+      append(appNameCsv);
+      append(',');
+      append(p.csvHead);
+      append(',');
+      appendDigits(lineNo);
+      append(',');
+      append(fileColumnsCsv);
+      append(',');
+      appendCsv(foundContent);
+      append(',');
+      append(p.csvTail);
+      out.write(buf, 0, len);
+      out.newLine();
+    }
+
+    private void appendCsv(String v) {
+      boolean needsQuote = v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.startsWith(" ") || v.endsWith(" ");
+      if (!needsQuote) { append(v); return; }
+      append('"');
+      for (int i = 0, n = v.length(); i < n; i++) {
+        char c = v.charAt(i);
+        if (c == '"') append('"');
+        append(c);
+      }
+      append('"');
+    }
+
+    private void append(String s) {
+      int n = s.length();
+      ensure(n);
+      s.getChars(0, n, buf, len);
+      len += n;
+    }
+
+    private void append(char c) {
+      ensure(1);
+      buf[len++] = c;
+    }
+
+    private void appendDigits(int v) { // v >= 0
+      ensure(10);
+      int start = len;
+      do { buf[len++] = (char) ('0' + v % 10); v /= 10; } while (v != 0);
+      for (int i = start, j = len - 1; i < j; i++, j--) { char t = buf[i]; buf[i] = buf[j]; buf[j] = t; }
+    }
+
+    private void ensure(int extra) {
+      if (len + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+    }
+  }
+
+  private static String csv(String val) {
+    if (val == null) val = "";
+    String v = val;
+    if (v.contains("\"")) v = v.replace("\"", "\"\"");
+    boolean needsQuote = v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.startsWith(" ") || v.endsWith(" ");
+    return needsQuote ? '"' + v + '"' : v;
+  }
+
+  private static boolean isFlag(String s) { return s != null && s.startsWith("--"); }
+  private static String notEmpty(String s) { return (s != null && !s.trim().isEmpty()) ? s : null; }
+  private static String notEmpty(String s, String def) { return (s != null && !s.trim().isEmpty()) ? s : def; }
+
+  // Derives, from a regex's source, a set of literal strings such that every match contains at least one of them.
+  // Conservative: anything it does not understand contributes no requirement, so the answer is only ever too weak,
+  // never wrong. Literals are ASCII lower-cased because every pattern is compiled CASE_INSENSITIVE.
+  static final class LiteralExtractor {
+    private static final int MAX_SET = 64;
+    private static final int MIN_LITERAL_LEN = 2;
+
+    // exact: every string the node can match (null = unknown/too many); req: a match contains one of these (null = none)
+    private static final class Info {
+      final Set<String> exact;
+      final Set<String> req;
+      Info(Set<String> exact, Set<String> req) { this.exact = exact; this.req = req; }
+    }
+    private static final Info ANY = new Info(null, null);
+    private static final Info EMPTY = new Info(Collections.singleton(""), null);
+
+    private final String re;
+    private int pos;
+
+    private LiteralExtractor(String re) { this.re = re; }
+
+    static String[] extract(String regex) {
+      try {
+        LiteralExtractor x = new LiteralExtractor(regex);
+        Set<String> lits = required(x.parseAlternation());
+        if (x.pos != regex.length() || lits == null || lits.isEmpty()) return null;
+        return minimal(lits);
+      } catch (RuntimeException ex) {
+        return null; // (?x), (?u) or syntax we do not model: always run the regex
+      }
+    }
+
+    // PrefilterLiterals column (';'-separated, written by RegenerateThirdPartyRegex): taken as given instead of
+    // deriving literals from the regex. Empty, short or non-ASCII entries fall back to extract().
+    static String[] fromColumn(String value) {
+      if (value == null || value.trim().isEmpty()) return null;
+      Set<String> lits = new LinkedHashSet<>();
+      for (String l : value.split(";")) {
+        l = l.trim();
+        for (int i = 0; i < l.length(); i++) if (l.charAt(i) >= 128) return null;
+        StringBuilder lower = new StringBuilder(l.length());
+        for (int i = 0; i < l.length(); i++) lower.append(lower(l.charAt(i)));
+        lits.add(lower.toString());
+      }
+      return minimal(lits);
+    }
+
+    // A literal that contains another one adds nothing: keep only the minimal ones
+    private static String[] minimal(Set<String> lits) {
+      List<String> sorted = new ArrayList<>(lits);
+      sorted.sort(Comparator.comparingInt(String::length));
+      List<String> minimal = new ArrayList<>();
+      for (String l : sorted) {
+        if (l.length() < MIN_LITERAL_LEN) return null;
+        boolean covered = false;
+        for (String m : minimal) if (l.contains(m)) { covered = true; break; }
+        if (!covered) minimal.add(l);
+      }
+      return minimal.toArray(new String[0]);
+    }
+
+    private Info parseAlternation() {
+      List<Info> branches = new ArrayList<>();
+      branches.add(parseSequence());
+      while (pos < re.length() && re.charAt(pos) == '|') {
+        pos++;
+        branches.add(parseSequence());
+      }
+      if (branches.size() == 1) return branches.get(0);
+      Set<String> exact = new LinkedHashSet<>();
+      Set<String> req = new LinkedHashSet<>();
+      for (Info b : branches) {
+        if (exact != null) {
+          if (b.exact == null) exact = null; else exact.addAll(b.exact);
+        }
+        Set<String> r = required(b);
+        if (req != null) {
+          if (r == null) req = null; else req.addAll(r);
+        }
+      }
+      return new Info(capped(exact), capped(req));
+    }
+
+    private Info parseSequence() {
+      Set<String> run = Collections.singleton("");
+      List<Set<String>> candidates = new ArrayList<>();
+      boolean allExact = true;
+      while (pos < re.length() && re.charAt(pos) != '|' && re.charAt(pos) != ')') {
+        Info c = parseQuantified();
+        if (c.exact != null) {
+          Set<String> joined = cross(run, c.exact);
+          if (joined == null) {
+            addCandidate(candidates, run);
+            run = c.exact;
+            allExact = false;
+          } else {
+            run = joined;
+          }
+        } else {
+          addCandidate(candidates, run);
+          if (c.req != null) candidates.add(c.req);
+          run = Collections.singleton("");
+          allExact = false;
+        }
+      }
+      addCandidate(candidates, run);
+      return new Info(allExact ? run : null, best(candidates));
+    }
+
+    private Info parseQuantified() {
+      Info a = parseAtom();
+      if (pos >= re.length()) return a;
+      int min, max;
+      char c = re.charAt(pos);
+      if (c == '*') { min = 0; max = -1; pos++; }
+      else if (c == '+') { min = 1; max = -1; pos++; }
+      else if (c == '?') { min = 0; max = 1; pos++; }
+      else if (c == '{') {
+        int close = re.indexOf('}', pos);
+        String[] bounds = re.substring(pos + 1, close).split(",", -1);
+        min = Integer.parseInt(bounds[0].trim());
+        max = bounds.length == 1 ? min : (bounds[1].trim().isEmpty() ? -1 : Integer.parseInt(bounds[1].trim()));
+        pos = close + 1;
+      } else {
+        return a;
+      }
+      if (pos < re.length() && (re.charAt(pos) == '?' || re.charAt(pos) == '+')) pos++; // lazy / possessive
+      if (min == 0) return ANY;
+      if (min == 1 && max == 1) return a;
+      return new Info(null, required(a));
+    }
+
+    private Info parseAtom() {
+      char c = re.charAt(pos++);
+      switch (c) {
+        case '(': return parseGroup();
+        case '[': skipClass(); return ANY;
+        case '.': return ANY;
+        case '^': case '$': return EMPTY;
+        case '\\': return parseEscape();
+        case '*': case '+': case '?': case '{':
+          throw new IllegalArgumentException("Dangling quantifier at " + (pos - 1));
+        default: return literal(c);
+      }
+    }
+
+    private Info parseGroup() {
+      boolean zeroWidth = false;
+      if (re.startsWith("?", pos)) {
+        pos++;
+        char k = re.charAt(pos);
+        if (k == ':' || k == '>') { pos++; }
+        else if (k == '=' || k == '!') { pos++; zeroWidth = true; }
+        else if (k == '<' && (re.charAt(pos + 1) == '=' || re.charAt(pos + 1) == '!')) { pos += 2; zeroWidth = true; }
+        else if (k == '<') { pos = re.indexOf('>', pos) + 1; }
+        else {
+          // Inline flags: (?ims) or (?i-s:...)
+          int start = pos;
+          while (Character.isLetter(re.charAt(pos)) || re.charAt(pos) == '-') pos++;
+          String flags = re.substring(start, pos);
+          if (flags.indexOf('x') >= 0 || flags.indexOf('u') >= 0 || flags.indexOf('U') >= 0) {
+            throw new IllegalArgumentException("Unsupported inline flags: " + flags);
+          }
+          if (re.charAt(pos++) == ')') return EMPTY;
+        }
+      }
+      Info inner = parseAlternation();
+      if (pos >= re.length() || re.charAt(pos) != ')') throw new IllegalArgumentException("Unclosed group");
+      pos++;
+      return zeroWidth ? EMPTY : inner;
+    }
+
+    private Info parseEscape() {
+      char c = re.charAt(pos++);
+      switch (c) {
+        case 'Q': {
+          int end = re.indexOf("\\E", pos);
+          String lit = end < 0 ? re.substring(pos) : re.substring(pos, end);
+          pos = end < 0 ? re.length() : end + 2;
+          for (int i = 0; i < lit.length(); i++) if (lit.charAt(i) >= 128) return ANY;
+          return new Info(Collections.singleton(lit.toLowerCase(Locale.ROOT)), null);
+        }
+        case 'b': case 'B': case 'A': case 'z': case 'Z': case 'G': return EMPTY;
+        case 't': return literal('\t');
+        case 'n': return literal('\n');
+        case 'r': return literal('\r');
+        case 'f': return literal('\f');
+        case 'a': return literal('\u0007');
+        case 'e': return literal('\u001B');
+        case 'p': case 'P': case 'N': case 'x':
+          if (pos < re.length() && re.charAt(pos) == '{') pos = re.indexOf('}', pos) + 1;
+          else if (c == 'x') pos += 2;
+          else if (c != 'N') pos++;
+          return ANY;
+        case 'u': pos += 4; return ANY;
+        case 'c': pos++; return ANY;
+        case 'k': pos = re.indexOf('>', pos) + 1; return ANY;
+        case '0':
+          for (int n = 0; n < 3 && pos < re.length() && re.charAt(pos) >= '0' && re.charAt(pos) <= '7'; n++) pos++;
+          return ANY;
+        default:
+          if (c >= '1' && c <= '9') {
+            while (pos < re.length() && Character.isDigit(re.charAt(pos))) pos++;
+            return ANY; // back reference
+          }
+          if (Character.isLetterOrDigit(c)) return ANY; // \d \w \s \h \R \X ...
+          return literal(c);
+      }
+    }
+
+    private void skipClass() {
+      int depth = 1;
+      if (pos < re.length() && re.charAt(pos) == '^') pos++;
+      if (pos < re.length() && re.charAt(pos) == ']') pos++; // leading ']' is literal
+      while (depth > 0) {
+        char c = re.charAt(pos++);
+        if (c == '\\') {
+          if (re.charAt(pos) == 'Q') {
+            int end = re.indexOf("\\E", pos);
+            pos = end < 0 ? re.length() : end + 2;
+          } else {
+            pos++;
+          }
+        } else if (c == '[') {
+          depth++;
+          if (pos < re.length() && re.charAt(pos) == '^') pos++;
+          if (pos < re.length() && re.charAt(pos) == ']') pos++;
+        } else if (c == ']') {
+          depth--;
+        }
+      }
+    }
+
+    private static Info literal(char c) {
+      if (c >= 128) return ANY;
+      return new Info(Collections.singleton(String.valueOf(lower(c))), null);
+    }
+
+    private static Set<String> required(Info i) {
+      if (i.exact != null && !i.exact.contains("")) return i.exact;
+      return i.req;
+    }
+
+    private static void addCandidate(List<Set<String>> candidates, Set<String> run) {
+      if (!run.contains("")) candidates.add(run);
+    }
+
+    // The most selective requirement: longest shortest-literal, then fewest literals.
+    private static Set<String> best(List<Set<String>> candidates) {
+      Set<String> best = null;
+      int bestMin = -1;
+      for (Set<String> c : candidates) {
+        int min = Integer.MAX_VALUE;
+        for (String s : c) min = Math.min(min, s.length());
+        if (min > bestMin || (min == bestMin && c.size() < best.size())) { best = c; bestMin = min; }
+      }
+      return best;
+    }
+
+    private static Set<String> cross(Set<String> a, Set<String> b) {
+      if ((long) a.size() * b.size() > MAX_SET) return null;
+      Set<String> out = new LinkedHashSet<>();
+      for (String x : a) for (String y : b) out.add(x + y);
+      return out;
+    }
+
+    private static Set<String> capped(Set<String> s) {
+      return s == null || s.size() > MAX_SET ? null : s;
+    }
+  }
+
+  // Aho-Corasick automaton over all pattern literals. One pass over a file tells which patterns can possibly match.
+  static final class Prefilter {
+    private final int[][] literalIdsByPattern; // null entry = pattern always runs
+    private final int literalCount;
+    private final byte[] charClass = new byte[128]; // 0 = char occurs in no literal
+    private final int classes;
+    private final int[] next;    // DFA: next[state * classes + class]
+    private final int[][] output; // literal ids recognised on entering a state
+
+    private Prefilter(int[][] literalIdsByPattern, List<String> literals) {
+      this.literalIdsByPattern = literalIdsByPattern;
+      this.literalCount = literals.size();
+
+      int cls = 1;
+      for (String l : literals) {
+        for (int i = 0; i < l.length(); i++) {
+          char c = l.charAt(i);
+          if (charClass[c] == 0) charClass[c] = (byte) cls++;
+        }
+      }
+      this.classes = cls;
+
+      // Trie
+      List<int[]> gotoList = new ArrayList<>();
+      List<List<Integer>> outList = new ArrayList<>();
+      gotoList.add(new int[classes]);
+      outList.add(new ArrayList<>());
+      for (int id = 0; id < literals.size(); id++) {
+        String l = literals.get(id);
+        int state = 0;
+        for (int i = 0; i < l.length(); i++) {
+          int k = charClass[l.charAt(i)];
+          if (gotoList.get(state)[k] == 0) {
+            gotoList.get(state)[k] = gotoList.size();
+            gotoList.add(new int[classes]);
+            outList.add(new ArrayList<>());
+          }
+          state = gotoList.get(state)[k];
+        }
+        outList.get(state).add(id);
+      }
+
+      // Failure links, folded into a full transition table (BFS order)
+      int states = gotoList.size();
+      int[] fail = new int[states];
+      next = new int[states * classes];
+      output = new int[states][];
+      ArrayDeque<Integer> queue = new ArrayDeque<>();
+      for (int k = 1; k < classes; k++) {
+        int s = gotoList.get(0)[k];
+        next[k] = s;
+        if (s != 0) queue.add(s);
+      }
+      output[0] = new int[0];
+      while (!queue.isEmpty()) {
+        int r = queue.poll();
+        List<Integer> outs = outList.get(r);
+        outs.addAll(outList.get(fail[r]));
+        for (int k = 1; k < classes; k++) {
+          int s = gotoList.get(r)[k];
+          if (s != 0) {
+            fail[s] = next[fail[r] * classes + k];
+            next[r * classes + k] = s;
+            queue.add(s);
+          } else {
+            next[r * classes + k] = next[fail[r] * classes + k];
+          }
+        }
+        output[r] = new int[outs.size()];
+        for (int i = 0; i < outs.size(); i++) output[r][i] = outs.get(i);
+      }
+    }
+
+    static Prefilter build(List<PatternEntry> patterns) {
+      Map<String, Integer> ids = new LinkedHashMap<>();
+      int[][] byPattern = new int[patterns.size()][];
+      for (int pi = 0; pi < patterns.size(); pi++) {
+        String[] lits = patterns.get(pi).literals;
+        if (lits == null) continue;
+        byPattern[pi] = new int[lits.length];
+        for (int i = 0; i < lits.length; i++) {
+          Integer id = ids.get(lits[i]);
+          if (id == null) { id = ids.size(); ids.put(lits[i], id); }
+          byPattern[pi][i] = id;
+        }
+      }
+      return new Prefilter(byPattern, new ArrayList<>(ids.keySet()));
+    }
+
+    int literalCount() { return literalCount; }
+
+    int filteredCount() {
+      int n = 0;
+      for (int[] ids : literalIdsByPattern) if (ids != null) n++;
+      return n;
+    }
+
+    // candidates[i] is false only when pattern i cannot match anywhere in text
+    boolean[] candidates(CharSequence text) {
+      boolean[] found = new boolean[literalCount];
+      int state = 0;
+      for (int i = 0, n = text.length(); i < n; i++) {
+        char c = text.charAt(i);
+        if (c >= 128) { state = 0; continue; }
+        int k = charClass[lower(c)];
+        if (k == 0) { state = 0; continue; }
+        state = next[state * classes + k];
+        for (int id : output[state]) found[id] = true;
+      }
+      boolean[] candidates = new boolean[literalIdsByPattern.length];
+      for (int pi = 0; pi < candidates.length; pi++) {
+        int[] ids = literalIdsByPattern[pi];
+        if (ids == null) { candidates[pi] = true; continue; }
+        for (int id : ids) if (found[id]) { candidates[pi] = true; break; }
+      }
+      return candidates;
+    }
+  }
+
+  private static char lower(char c) { return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c; }
+
+  // On-disk index for --incremental: per file its size, mtime and SHA-256, and for every pattern fingerprint
+  // (PatternID + regex) the hits it produced. CSV metadata columns are not cached, so editing Fix/Remediation
+  // text in the pattern sheet never forces a rescan; only a changed regex does.
+  static final class ScanCache {
+    private static final String MAGIC = "JMS-SCAN-INDEX";
+    private static final int VERSION = 1;
+
+    static final class Entry {
+      final long size;
+      final long mtime;
+      final byte[] hash;
+      final Map<String, List<Hit>> hits; // pattern fingerprint -> hits (pattern field unused)
+      Entry(long size, long mtime, byte[] hash, Map<String, List<Hit>> hits) {
+        this.size = size;
+        this.mtime = mtime;
+        this.hash = hash;
+        this.hits = hits;
+      }
+    }
+
+    final Path indexFile;
+    final AtomicInteger reusedFiles = new AtomicInteger();
+    final AtomicInteger rescannedFiles = new AtomicInteger();
+    private final String[] fingerprints;
+    private final String patternSetHash;
+    private final boolean patternSetChanged;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new java.util.concurrent.ConcurrentHashMap<>();
+
+    private ScanCache(Path indexFile, String[] fingerprints, String patternSetHash,
+                      boolean patternSetChanged, Map<String, Entry> previous) {
+      this.indexFile = indexFile;
+      this.fingerprints = fingerprints;
+      this.patternSetHash = patternSetHash;
+      this.patternSetChanged = patternSetChanged;
+      this.previous = previous;
+    }
+
+    static ScanCache open(Path cacheDir, String csvFile, List<PatternEntry> patterns) throws IOException {
+      Files.createDirectories(cacheDir);
+      String csvName = Paths.get(csvFile).getFileName().toString().replaceAll("[^A-Za-z0-9._-]", "_");
+      Path indexFile = cacheDir.resolve("scan-index_" + csvName + ".bin");
+
+      String[] fps = new String[patterns.size()];
+      StringBuilder all = new StringBuilder();
+      for (int i = 0; i < fps.length; i++) {
+        PatternEntry p = patterns.get(i);
+        fps[i] = p.patternID + "\u0000" + p.regex;
+        all.append(fps[i]).append('\u0001');
+      }
+      String setHash = hex(sha256(ByteBuffer.wrap(all.toString().getBytes(StandardCharsets.UTF_8))));
+
+      Map<String, Entry> previous = new HashMap<>();
+      String previousSetHash = null;
+      if (Files.isRegularFile(indexFile)) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new java.util.zip.GZIPInputStream(Files.newInputStream(indexFile))))) {
+          if (!MAGIC.equals(in.readUTF()) || in.readInt() != VERSION) throw new IOException("unknown index format");
+          previousSetHash = in.readUTF();
+          String[] table = new String[in.readInt()];
+          for (int i = 0; i < table.length; i++) table[i] = in.readUTF();
+          int files = in.readInt();
+          for (int f = 0; f < files; f++) {
+            String key = in.readUTF();
+            long size = in.readLong();
+            long mtime = in.readLong();
+            byte[] hash = new byte[in.readUnsignedByte()];
+            in.readFully(hash);
+            int groups = in.readInt();
+            Map<String, List<Hit>> hits = new HashMap<>();
+            for (int g = 0; g < groups; g++) {
+              String fp = table[in.readInt()];
+              int n = in.readInt();
+              List<Hit> list = new ArrayList<>(n);
+              for (int h = 0; h < n; h++) list.add(new Hit(null, in.readInt(), in.readInt(), in.readUTF()));
+              hits.put(fp, list);
+            }
+            previous.put(key, new Entry(size, mtime, hash, hits));
+          }
+        } catch (IOException | RuntimeException ex) {
+          System.err.println("[WARN] Ignoring unreadable incremental index " + indexFile + ": " + ex.getMessage());
+          previous.clear();
+          previousSetHash = null;
+        }
+      }
+      return new ScanCache(indexFile, fps, setHash, !setHash.equals(previousSetHash), previous);
+    }
+
+    static String key(Path file) { return file.toAbsolutePath().normalize().toString(); }
+
+    String fingerprint(int patternIndex) { return fingerprints[patternIndex]; }
+    Entry get(String key) { return previous.get(key); }
+    void put(String key, Entry e) { current.put(key, e); }
+    int previousFileCount() { return previous.size(); }
+    boolean patternSetChanged() { return patternSetChanged; }
+
+    // Rewrites the index with the files seen in this run (deleted files drop out). Written to a temp file first.
+    void save() throws IOException {
+      Map<String, Integer> table = new LinkedHashMap<>();
+      for (String fp : fingerprints) table.putIfAbsent(fp, table.size());
+      List<String> keys = new ArrayList<>(current.keySet());
+      Collections.sort(keys);
+
+      Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new java.util.zip.GZIPOutputStream(Files.newOutputStream(tmp))))) {
+        out.writeUTF(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(patternSetHash);
+        out.writeInt(table.size());
+        for (String fp : table.keySet()) out.writeUTF(fp);
+        out.writeInt(keys.size());
+        for (String key : keys) {
+          Entry e = current.get(key);
+          out.writeUTF(key);
+          out.writeLong(e.size);
+          out.writeLong(e.mtime);
+          out.writeByte(e.hash.length);
+          out.write(e.hash);
+          out.writeInt(e.hits.size());
+          for (Map.Entry<String, List<Hit>> g : e.hits.entrySet()) {
+            out.writeInt(table.get(g.getKey()));
+            out.writeInt(g.getValue().size());
+            for (Hit h : g.getValue()) {
+              out.writeInt(h.lineNo);
+              out.writeInt(h.start);
+              out.writeUTF(h.snippet);
+            }
+          }
+        }
+      }
+      Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static byte[] sha256(ByteBuffer bytes) {
+      try {
+        java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
+        md.update(bytes.duplicate());
+        return md.digest();
+      } catch (java.security.NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    static String hex(byte[] b) {
+      StringBuilder sb = new StringBuilder(b.length * 2);
+      for (byte x : b) sb.append(Character.forDigit((x >> 4) & 0xf, 16)).append(Character.forDigit(x & 0xf, 16));
+      return sb.toString();
+    }
+  }
+
+  // Parsed pattern set keyed on the SHA-256 of the CSV bytes: the row fields as loadPatterns produced them plus the
+  // prefilter literals, so a warm start skips splitCsv and LiteralExtractor and only recompiles the regexes.
+  // Any mismatch (CSV edited, other format or regex flags, unreadable file) falls back to the CSV.
+  static final class PatternSnapshot {
+    private static final String MAGIC = "JMS-PATTERN-SNAPSHOT";
+    private static final int VERSION = 2; // 2: PrefilterLiterals column read (version 1 snapshots ignored it)
+
+    static Path fileFor(Path csv) {
+      return csv.toAbsolutePath().resolveSibling(csv.getFileName() + ".snapshot.bin");
+    }
+
+    static String hash(Path csv) throws IOException {
+      return ScanCache.hex(ScanCache.sha256(ByteBuffer.wrap(Files.readAllBytes(csv))));
+    }
+
+    static List<PatternEntry> load(Path snapshot, String csvHash) {
+      if (!Files.isRegularFile(snapshot)) return null;
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+        if (!MAGIC.equals(in.readUTF()) || in.readInt() != VERSION || in.readInt() != REGEX_FLAGS) return null;
+        if (!csvHash.equals(in.readUTF())) return null;
+        int warnings = in.readInt();
+        for (int i = 0; i < warnings; i++) System.err.println(readString(in));
+        int n = in.readInt();
+        List<PatternEntry> patterns = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+          String[] f = new String[PatternEntry.FIELD_COUNT];
+          for (int k = 0; k < f.length; k++) f[k] = readString(in);
+          String[] literals = null;
+          int lits = in.readInt();
+          if (lits >= 0) {
+            literals = new String[lits];
+            for (int k = 0; k < lits; k++) literals[k] = readString(in);
+          }
+          patterns.add(PatternEntry.fromFields(f, Pattern.compile(f[5], REGEX_FLAGS), literals));
+        }
+        assignDedupeIds(patterns);
+        return patterns;
+      } catch (IOException | RuntimeException ex) {
+        System.err.println("[WARN] Ignoring unreadable pattern snapshot " + snapshot + ": " + ex.getMessage());
+        return null;
+      }
+    }
+
+    // Best effort: a read-only pattern folder only costs the warm start
+    static void save(Path snapshot, String csvHash, List<PatternEntry> patterns, List<String> warnings) {
+      Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+      try {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+          out.writeUTF(MAGIC);
+          out.writeInt(VERSION);
+          out.writeInt(REGEX_FLAGS);
+          out.writeUTF(csvHash);
+          out.writeInt(warnings.size());
+          for (String w : warnings) writeString(out, w);
+          out.writeInt(patterns.size());
+          for (PatternEntry p : patterns) {
+            for (String f : p.fields()) writeString(out, f);
+            out.writeInt(p.literals == null ? -1 : p.literals.length);
+            if (p.literals != null) for (String l : p.literals) writeString(out, l);
+          }
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException ex) {
+        System.err.println("[WARN] Could not write pattern snapshot " + snapshot + ": " + ex.getMessage());
+        try { Files.deleteIfExists(tmp); } catch (IOException ignore) { }
+      }
+    }
+  }
+
+  // writeUTF caps at 64 KB; descriptions in the sheet are free text
+  static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(b.length);
+    out.write(b);
+  }
+
+  static String readString(DataInputStream in) throws IOException {
+    byte[] b = new byte[in.readInt()];
+    in.readFully(b);
+    return new String(b, StandardCharsets.UTF_8);
+  }
+
+  // --bytecode: a class file's constant pool written out as source-like lines, so the source patterns run unchanged:
+  //   import a.b.C;      every class it references: CONSTANT_Class entries and the L...; types of descriptors,
+  //                      generic signatures and annotations (any Utf8 entry that parses as one)
+  //   new C();           every constructor it calls
+  //   C.name();          every other method it calls
+  //   C.name;            every field it reads or writes
+  //   "text"             every string constant (Class.forName names, reflection, JNDI, SQL)
+  // Members use the simple class name, as source written against the import does; the import line has the full name.
+  // Nested classes are written with '.'. Lines are unique and in constant-pool order; each keeps the index of the entry
+  // it came from. The class itself and the classes in `skip` are left out.
+  static final class ClassListing {
+    final String text;
+    final int[] cpIndexByLine;
+
+    private ClassListing(String text, int[] cpIndexByLine) {
+      this.text = text;
+      this.cpIndexByLine = cpIndexByLine;
+    }
+
+    // A constant-pool index out of range or pointing at an entry of the wrong type (truncated or obfuscated
+    // classes in third-party jars) fails this class only, like any other unreadable class
+    static ClassListing parse(byte[] classBytes, Set<String> skip) throws IOException {
+      try {
+        return read(classBytes, skip);
+      } catch (ArrayIndexOutOfBoundsException | NullPointerException e) {
+        throw new IOException("Malformed class file", e);
+      }
+    }
+
+    private static ClassListing read(byte[] classBytes, Set<String> skip) throws IOException {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(classBytes));
+      if (in.readInt() != 0xCAFEBABE) throw new IOException("Not a class file");
+      in.readUnsignedShort(); // minor
+      in.readUnsignedShort(); // major
+      int count = in.readUnsignedShort();
+      int[] tag = new int[count];
+      int[] ref1 = new int[count];
+      int[] ref2 = new int[count];
+      String[] utf = new String[count];
+      for (int i = 1; i < count; i++) {
+        int t = in.readUnsignedByte();
+        tag[i] = t;
+        switch (t) {
+          case 1: utf[i] = in.readUTF(); break;                                 // Utf8 (modified UTF-8, as readUTF)
+          case 3: case 4: in.readInt(); break;                                  // Integer, Float
+          case 5: case 6: in.readLong(); i++; break;                            // Long, Double take two slots
+          case 7: case 8: case 16: case 19: case 20: ref1[i] = in.readUnsignedShort(); break;
+          case 9: case 10: case 11: case 12: case 17: case 18:
+            ref1[i] = in.readUnsignedShort();
+            ref2[i] = in.readUnsignedShort();
+            break;
+          case 15: in.readUnsignedByte(); ref1[i] = in.readUnsignedShort(); break; // MethodHandle
+          default: throw new IOException("Unknown constant pool tag " + t + " at index " + i);
+        }
+      }
+      in.readUnsignedShort(); // access flags
+      int thisClass = in.readUnsignedShort();
+      String self = tag[thisClass] == 7 ? utf[ref1[thisClass]] : null;
+
+      Map<String, Integer> lines = new LinkedHashMap<>();
+      for (int i = 1; i < count; i++) {
+        switch (tag[i]) {
+          case 7: {
+            String c = elementClass(utf[ref1[i]]);
+            if (c != null && !c.equals(self) && !skip.contains(c)) lines.putIfAbsent("import " + sourceName(c) + ";", i);
+            break;
+          }
+          case 9: case 10: case 11: {
+            String owner = elementClass(utf[ref1[ref1[i]]]);
+            String member = utf[ref1[ref2[i]]];
+            if (owner == null || owner.equals(self) || skip.contains(owner) || member.equals("<clinit>")) break;
+            String simple = sourceName(owner.substring(owner.lastIndexOf('/') + 1));
+            String line;
+            if (tag[i] == 9) line = simple + "." + member + ";";
+            else if (member.equals("<init>")) line = "new " + simple + "();";
+            else line = simple + "." + member + "();";
+            lines.putIfAbsent(line, i);
+            break;
+          }
+          case 8: {
+            String v = utf[ref1[i]];
+            StringBuilder sb = new StringBuilder(v.length() + 2).append('"');
+            for (int k = 0; k < v.length(); k++) {
+              char ch = v.charAt(k);
+              sb.append(ch < ' ' ? ' ' : ch);
+            }
+            lines.putIfAbsent(sb.append('"').toString(), i);
+            break;
+          }
+          case 1:
+            for (String c : descriptorClasses(utf[i])) {
+              if (!c.equals(self) && !skip.contains(c)) lines.putIfAbsent("import " + sourceName(c) + ";", i);
+            }
+            break;
+          default:
+            break;
+        }
+      }
+
+      StringBuilder text = new StringBuilder();
+      int[] cpIndexByLine = new int[lines.size()];
+      int n = 0;
+      for (Map.Entry<String, Integer> e : lines.entrySet()) {
+        text.append(e.getKey()).append('\n');
+        cpIndexByLine[n++] = e.getValue();
+      }
+      return new ClassListing(text.toString(), cpIndexByLine);
+    }
+
+    // "a/b/C" or an array of it ("[[La/b/C;"); null for arrays of primitives
+    private static String elementClass(String name) {
+      if (name == null || !name.startsWith("[")) return name;
+      int i = 0;
+      while (i < name.length() && name.charAt(i) == '[') i++;
+      if (i >= name.length() || name.charAt(i) != 'L' || !name.endsWith(";")) return null;
+      return name.substring(i + 1, name.length() - 1);
+    }
+
+    // Class names of the L...; types in a field/method descriptor or generic signature. Anything that does not
+    // parse that way (names, string data) yields nothing; only package-qualified names are returned.
+    private static List<String> descriptorClasses(String s) {
+      if (s.isEmpty()) return Collections.emptyList();
+      char first = s.charAt(0);
+      if (first != '(' && first != 'L' && first != '[' && first != '<') return Collections.emptyList();
+      List<String> out = new ArrayList<>();
+      for (int i = 0; i < s.length(); i++) {
+        if (s.charAt(i) != 'L') continue;
+        char before = i == 0 ? '(' : s.charAt(i - 1);
+        if ("();[<>*+-:^".indexOf(before) < 0) continue;
+        int end = i + 1;
+        while (end < s.length() && s.charAt(end) != ';' && s.charAt(end) != '<') end++;
+        if (end >= s.length()) break;
+        String c = s.substring(i + 1, end);
+        if (c.indexOf('/') > 0 && validName(c)) out.add(c);
+        i = end;
+      }
+      return out;
+    }
+
+    private static boolean validName(String c) {
+      for (int i = 0; i < c.length(); i++) {
+        char ch = c.charAt(i);
+        if (ch != '/' && !Character.isJavaIdentifierPart(ch)) return false;
+      }
+      return Character.isJavaIdentifierStart(c.charAt(0)) && !c.endsWith("/") && !c.contains("//");
+    }
+
+    // a/b/Outer$Inner -> a.b.Outer.Inner; synthetic names (Outer$1, Foo$$Proxy) keep their '$'
+    private static String sourceName(String internal) {
+      StringBuilder sb = new StringBuilder(internal.length());
+      for (int i = 0; i < internal.length(); i++) {
+        char ch = internal.charAt(i);
+        if (ch == '/') ch = '.';
+        else if (ch == '$' && i > 0 && i + 1 < internal.length() && Character.isLetterOrDigit(internal.charAt(i - 1))
+            && Character.isLetter(internal.charAt(i + 1))) ch = '.';
+        sb.append(ch);
+      }
+      return sb.toString();
+    }
+  }
+
+  // Duplicate suppression for the output stage. A duplicate is the same PatternID at the same offset of the same
+  // file; within a file that is a primitive (dedupeId, offset) key, cleared per file. Across roots, a file whose
+  // fileKey was already written (JSP root nested in the Java root, symlinks) is skipped as a whole; two different files
+  // that merely share a FilePathName are both written. Memory is one key per file instead of one String per match.
+  static final class Deduper {
+    private final Set<Object> writtenFiles = new HashSet<>();
+    private long[] keys = new long[64]; // open addressing, 0 = empty
+    private int size;
+
+    boolean startFile(Object fileKey) {
+      if (size > 0) {
+        if (keys.length > 4096) keys = new long[64]; else Arrays.fill(keys, 0L);
+        size = 0;
+      }
+      return writtenFiles.add(fileKey);
+    }
+
+    boolean firstHit(int dedupeId, int offset) {
+      long key = ((long) (dedupeId + 1) << 32) | (offset & 0xffffffffL);
+      if ((size + 1) * 2 > keys.length) grow();
+      if (!insert(keys, key)) return false;
+      size++;
+      return true;
+    }
+
+    private boolean insert(long[] table, long key) {
+      int mask = table.length - 1;
+      int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+      while (table[i] != 0) {
+        if (table[i] == key) return false;
+        i = (i + 1) & mask;
+      }
+      table[i] = key;
+      return true;
+    }
+
+    private void grow() {
+      long[] old = keys;
+      keys = new long[old.length * 2];
+      for (long k : old) if (k != 0) insert(keys, k);
+    }
+  }
+
+  // --profile: matcher cost per pattern row, summed over all files and workers. Indexed like `patterns`, so
+  // duplicate PatternIDs with different regexes are reported as separate rows. Hits are raw matcher hits
+  // (before dedupe); bytes are the on-disk size of every file the regex actually ran over.
+  static final class Profiler {
+    private final List<PatternEntry> patterns;
+    private final AtomicLongArray nanos;
+    private final AtomicLongArray bytes;
+    private final AtomicLongArray hits;
+    private final AtomicLongArray files;
+    private final AtomicLongArray skipped;
+    private final long[] worstNanos;
+    private final String[] worstFile;
+
+    Profiler(List<PatternEntry> patterns) {
+      int n = patterns.size();
+      this.patterns = patterns;
+      this.nanos = new AtomicLongArray(n);
+      this.bytes = new AtomicLongArray(n);
+      this.hits = new AtomicLongArray(n);
+      this.files = new AtomicLongArray(n);
+      this.skipped = new AtomicLongArray(n);
+      this.worstNanos = new long[n];
+      this.worstFile = new String[n];
+    }
+
+    void record(int pi, long elapsed, long fileBytes, int hitCount, String file) {
+      nanos.addAndGet(pi, elapsed);
+      bytes.addAndGet(pi, fileBytes);
+      hits.addAndGet(pi, hitCount);
+      files.incrementAndGet(pi);
+      synchronized (worstNanos) {
+        if (elapsed > worstNanos[pi]) {
+          worstNanos[pi] = elapsed;
+          worstFile[pi] = file;
+        }
+      }
+    }
+
+    void skipped(int pi) {
+      skipped.incrementAndGet(pi);
+    }
+
+    void write(Path target) throws IOException {
+      Integer[] order = new Integer[patterns.size()];
+      long total = 0;
+      for (int i = 0; i < order.length; i++) { order[i] = i; total += nanos.get(i); }
+      Arrays.sort(order, (a, b) -> Long.compare(nanos.get(b), nanos.get(a)));
+
+      try (BufferedWriter w = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+        w.write("Rank,PatternID,PatternName,PatternSet,TotalMs,SharePct,FilesMatched,FilesSkippedByPrefilter,"
+            + "BytesScanned,MBPerSec,Hits,WorstFileMs,WorstFile,Prefiltered,Regex");
+        w.newLine();
+        int rank = 0;
+        for (int pi : order) {
+          PatternEntry p = patterns.get(pi);
+          long ns = nanos.get(pi);
+          long b = bytes.get(pi);
+          String worst;
+          long worstNs;
+          synchronized (worstNanos) { worst = worstFile[pi]; worstNs = worstNanos[pi]; }
+          w.write(++rank + "," + csv(p.patternID) + ',' + csv(p.patternName) + ',' + csv(p.patternSet) + ','
+              + millis(ns) + ',' + String.format(Locale.ROOT, "%.2f", total == 0 ? 0.0 : ns * 100.0 / total) + ','
+              + files.get(pi) + ',' + skipped.get(pi) + ',' + b + ','
+              + String.format(Locale.ROOT, "%.1f", ns == 0 ? 0.0 : (b / 1048576.0) / (ns / 1e9)) + ','
+              + hits.get(pi) + ',' + millis(worstNs) + ',' + csv(worst) + ','
+              + (p.literals != null ? "Y" : "N") + ',' + csv(p.regex));
+          w.newLine();
+        }
+      }
+
+      for (int i = 0; i < Math.min(5, order.length) && nanos.get(order[i]) > 0; i++) {
+        PatternEntry p = patterns.get(order[i]);
+        System.out.println("[INFO] Slowest #" + (i + 1) + ": [" + p.patternID + "] " + p.patternName + " - "
+            + millis(nanos.get(order[i])) + " ms (worst file " + millis(worstNanos[order[i]]) + " ms: "
+            + worstFile[order[i]] + ")");
+      }
+    }
+
+    private static String millis(long ns) {
+      return String.format(Locale.ROOT, "%.3f", ns / 1e6);
+    }
+  }
+
+  // --regexTimeoutMs: the per-pattern, per-file budget and the timeouts hit so far, collected from all workers.
+  // regex_timeouts.csv is sorted by file and PatternID so reruns with the same timeouts produce the same report.
+  static final class RegexBudget {
+    final long nanos;
+    private final long millis;
+    private final Queue<String[]> timeouts = new java.util.concurrent.ConcurrentLinkedQueue<>();
+
+    RegexBudget(long millis) {
+      this.millis = millis;
+      this.nanos = millis * 1_000_000L;
+    }
+
+    void timedOut(PatternEntry p, String file, long fileBytes, long elapsedNanos, int lineNo, int partialHits,
+                  boolean interrupted) {
+      timeouts.add(new String[]{
+          p.patternID, p.patternName, p.patternSet, file, Long.toString(fileBytes), Long.toString(millis),
+          String.format(Locale.ROOT, "%.1f", elapsedNanos / 1e6), Integer.toString(lineNo),
+          Integer.toString(partialHits), interrupted ? "INTERRUPTED" : "TIMEOUT", p.regex});
+    }
+
+    int write(Path target) throws IOException {
+      List<String[]> rows = new ArrayList<>(timeouts);
+      rows.sort(Comparator.<String[], String>comparing(r -> r[3]).thenComparing(r -> r[0]));
+      try (BufferedWriter w = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+        w.write("PatternID,PatternName,PatternSet,FilePathName,FileBytes,TimeoutMs,ElapsedMs,AbortedAtLine,PartialHits,Reason,Regex");
+        w.newLine();
+        for (String[] r : rows) {
+          StringBuilder sb = new StringBuilder();
+          for (int i = 0; i < r.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(csv(r[i]));
+          }
+          w.write(sb.toString());
+          w.newLine();
+        }
+      }
+      return rows.size();
+    }
+  }
+
+  // --daemon: per-file FileScans of both roots kept in walk order, refreshed from WatchService events and rendered
+  // through writeFileScan with a fresh Deduper, so a response equals what a full run would write. A new file is first
+  // appended; the next response re-walks the roots (listing only) and puts the files back in walk order, which keeps
+  // both the row order and the duplicate the Deduper keeps across roots the same as in a full run.
+  // Events are collected until the tree has been quiet for DEBOUNCE_MS, then only the touched files are re-matched.
+  static final class ScanDaemon {
+    private static final long DEBOUNCE_MS = 150;
+
+    private final List<Path> roots;
+    private final SourceWalker walker;
+    private final List<PatternEntry> patterns;
+    private final Prefilter prefilter;
+    private final RegexBudget budget;
+    private final String applicationName;
+    private final boolean debug;
+    private final Map<Path, FileScan> results = new LinkedHashMap<>(); // guarded by itself
+    private boolean orderStale; // a file was appended out of walk order; guarded by results
+    private final Map<WatchKey, Path> watchedDirs = new java.util.concurrent.ConcurrentHashMap<>();
+    private final Set<Path> registered = new HashSet<>();
+    private WatchService watcher;
+    private volatile long lastUpdate;
+    private volatile int rescans;
+
+    ScanDaemon(List<Path> roots, SourceWalker walker, List<PatternEntry> patterns, Prefilter prefilter,
+               RegexBudget budget, String applicationName, boolean debug) {
+      this.roots = roots;
+      this.walker = walker;
+      this.patterns = patterns;
+      this.prefilter = prefilter;
+      this.budget = budget;
+      this.applicationName = applicationName;
+      this.debug = debug;
+    }
+
+    void initialScan(ScanCache cache, ForkJoinPool pool) throws IOException {
+      long t0 = System.nanoTime();
+      for (Path root : roots) {
+        if (!Files.isDirectory(root)) {
+          System.err.println("[WARN] Source dir not found or not a directory: " + root);
+          continue;
+        }
+        List<ForkJoinTask<FileScan>> tasks = new ArrayList<>();
+        walker.walk(root, (p, attrs) -> {
+          if (pool == null) store(matchFile(p, attrs, patterns, prefilter, cache, null, budget));
+          else tasks.add(pool.submit(() -> matchFile(p, attrs, patterns, prefilter, cache, null, budget)));
+        });
+        for (ForkJoinTask<FileScan> t : tasks) store(join(t));
+      }
+      synchronized (results) { orderStale = false; } // stored in walk order
+      lastUpdate = System.currentTimeMillis();
+      System.out.println("[INFO] Daemon initial scan: " + results.size() + " files in "
+          + (System.nanoTime() - t0) / 1_000_000 + " ms");
+    }
+
+    void run(int port) throws IOException {
+      watcher = FileSystems.getDefault().newWatchService();
+      for (Path root : roots) if (Files.isDirectory(root)) registerTree(root, root);
+
+      com.sun.net.httpserver.HttpServer server = com.sun.net.httpserver.HttpServer.create(
+          new java.net.InetSocketAddress(java.net.InetAddress.getLoopbackAddress(), port), 0);
+      server.createContext("/findings.csv", ex -> {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(1 << 16);
+        try (BufferedWriter w = new BufferedWriter(new OutputStreamWriter(buf, StandardCharsets.UTF_8))) {
+          render(w);
+        }
+        respond(ex, "text/csv; charset=UTF-8", buf.toByteArray());
+      });
+      server.createContext("/status", ex -> {
+        int files;
+        synchronized (results) { files = results.size(); }
+        String body = "files=" + files + "\nwatchedDirs=" + watchedDirs.size() + "\nrescans=" + rescans
+            + "\nlastUpdate=" + java.time.Instant.ofEpochMilli(lastUpdate) + "\n";
+        respond(ex, "text/plain; charset=UTF-8", body.getBytes(StandardCharsets.UTF_8));
+      });
+      server.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(0)));
+      System.out.println("[INFO] Daemon listening on http://127.0.0.1:" + server.getAddress().getPort()
+          + "/findings.csv (watching " + watchedDirs.size() + " dirs, Ctrl+C to stop)");
+
+      try {
+        watchLoop();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        server.stop(0);
+        watcher.close();
+      }
+    }
+
+    private void watchLoop() throws InterruptedException, IOException {
+      while (true) {
+        WatchKey key = watcher.take();
+        Set<Path> changed = new LinkedHashSet<>();
+        Set<Path> createdDirs = new LinkedHashSet<>();
+        boolean overflow = false;
+        while (key != null) {
+          Path dir = watchedDirs.get(key);
+          for (WatchEvent<?> ev : key.pollEvents()) {
+            if (ev.kind() == StandardWatchEventKinds.OVERFLOW) { overflow = true; continue; }
+            if (dir == null) continue;
+            Path child = dir.resolve((Path) ev.context());
+            if (ev.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) createdDirs.add(child);
+            else changed.add(child);
+          }
+          if (!key.reset()) registered.remove(watchedDirs.remove(key)); // directory gone
+          key = watcher.poll(DEBOUNCE_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
+        }
+        long t0 = System.nanoTime();
+        int n = overflow ? rescanAll() : apply(changed, createdDirs);
+        rescans++;
+        lastUpdate = System.currentTimeMillis();
+        System.out.println("[INFO] Rescanned " + n + " files in " + (System.nanoTime() - t0) / 1_000_000 + " ms"
+            + (overflow ? " (watch overflow, full rescan)" : ""));
+      }
+    }
+
+    private int apply(Set<Path> changed, Set<Path> createdDirs) throws IOException {
+      int n = 0;
+      for (Path d : createdDirs) {
+        if (!Files.isDirectory(d)) continue;
+        Path root = rootOf(d);
+        if (root == null || walker.excluded(root, d)) continue;
+        registerTree(root, d); // new or renamed directory: its files were never seen
+        int[] count = {0};
+        walker.walk(root, d, (f, attrs) -> { store(matchFile(f, attrs, patterns, prefilter, null, null, budget)); count[0]++; });
+        n += count[0];
+      }
+      for (Path p : changed) {
+        if (Files.isDirectory(p)) {
+          continue; // modify event of a directory (Windows reports one per child change)
+        } else if (Files.isRegularFile(p)) {
+          Path root = rootOf(p);
+          if (root == null || !walker.isSupported(p.getFileName().toString()) || walker.excluded(root, p)) continue;
+          store(matchFile(p, null, patterns, prefilter, null, null, budget));
+          n++;
+        } else {
+          // Deleted file, or a deleted directory and everything under it
+          synchronized (results) { results.keySet().removeIf(k -> k.startsWith(p)); }
+          if (debug) System.out.println("[DEBUG] Removed: " + p);
+        }
+      }
+      return n;
+    }
+
+    private int rescanAll() throws IOException {
+      Map<Path, FileScan> fresh = new LinkedHashMap<>();
+      for (Path root : roots) {
+        if (!Files.isDirectory(root)) continue;
+        registerTree(root, root);
+        walker.walk(root, (p, attrs) -> fresh.put(p, matchFile(p, attrs, patterns, prefilter, null, null, budget)));
+      }
+      synchronized (results) {
+        results.clear();
+        results.putAll(fresh);
+        orderStale = false;
+      }
+      return fresh.size();
+    }
+
+    private void store(FileScan fs) {
+      if (fs.error != null) {
+        // Typically saved-then-deleted temp files; the next event for the path decides
+        if (debug) System.out.println("[DEBUG] Skipping unreadable file: " + fs.file + " - " + fs.error.getMessage());
+        synchronized (results) { results.remove(fs.file); }
+        return;
+      }
+      if (debug) System.out.println("[DEBUG] Matched " + fs.hits.size() + " hits: " + fs.filePathName);
+      synchronized (results) {
+        if (results.put(fs.file, fs) == null) orderStale = true;
+      }
+    }
+
+    // Puts appended files back at their walk position; files that are gone from disk since stay until their event
+    private void restoreWalkOrder() throws IOException {
+      synchronized (results) {
+        if (!orderStale) return;
+        orderStale = false; // a file stored during the walk sets it again
+      }
+      List<Path> order = new ArrayList<>();
+      for (Path root : roots) if (Files.isDirectory(root)) walker.walk(root, (p, attrs) -> order.add(p));
+      synchronized (results) {
+        Map<Path, FileScan> sorted = new LinkedHashMap<>();
+        for (Path p : order) {
+          FileScan fs = results.get(p);
+          if (fs != null) sorted.put(p, fs);
+        }
+        for (Map.Entry<Path, FileScan> e : results.entrySet()) sorted.putIfAbsent(e.getKey(), e.getValue());
+        results.clear();
+        results.putAll(sorted);
+      }
+    }
+
+    private Path rootOf(Path p) {
+      for (Path root : roots) if (p.startsWith(root)) return root;
+      return null;
+    }
+
+    // Watches `dir` and every directory below it the walker does not prune
+    private void registerTree(Path root, Path dir) throws IOException {
+      walker.walkDirectories(root, dir, d -> {
+        if (registered.add(d)) {
+          watchedDirs.put(d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+              StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), d);
+        }
+      });
+    }
+
+    void render(BufferedWriter w) throws IOException {
+      restoreWalkOrder();
+      w.write(CSV_HEADER);
+      w.newLine();
+      CsvRowWriter out = new CsvRowWriter(w, applicationName);
+      AtomicInteger matchSn = new AtomicInteger();
+      Deduper seen = new Deduper();
+      synchronized (results) {
+        for (FileScan fs : results.values()) writeFileScan(fs, out, matchSn, seen, false);
+      }
+    }
+
+    void writeCsv(Path target) throws IOException {
+      try (BufferedWriter w = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(target), StandardCharsets.UTF_8))) {
+        render(w);
+      }
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange ex, String contentType, byte[] body) throws IOException {
+      ex.getResponseHeaders().set("Content-Type", contentType);
+      ex.sendResponseHeaders(200, body.length);
+      try (OutputStream os = ex.getResponseBody()) {
+        os.write(body);
+      }
+    }
+  }
+
+  // Source tree walk on Files.walkFileTree: excluded directories are pruned before they are listed, files come with the
+  // attributes read during the listing (one stat per entry), and the extension test is a hash lookup on the text after
+  // the last dot. Visit order is the same depth-first order Files.walk produced, so output.csv rows keep their order.
+  static final class SourceWalker {
+    interface FileSink { void accept(Path file, BasicFileAttributes attrs) throws IOException; }
+    interface DirSink { void accept(Path dir) throws IOException; }
+
+    private final Set<String> exts = new HashSet<>();      // ".java" style, lower case
+    private final List<String> compoundExts = new ArrayList<>(); // ".tar.gz" style, checked with endsWith
+    private final List<PathMatcher> nameGlobs = new ArrayList<>();
+    private final List<PathMatcher> pathGlobs = new ArrayList<>();
+
+    SourceWalker(Set<String> exts, List<String> excludes) {
+      for (String e : exts) {
+        if (e.lastIndexOf('.') > 0) compoundExts.add(e); else this.exts.add(e);
+      }
+      FileSystem fs = FileSystems.getDefault();
+      for (String g : excludes) {
+        (g.indexOf('/') >= 0 ? pathGlobs : nameGlobs).add(fs.getPathMatcher("glob:" + g));
+      }
+    }
+
+    boolean isSupported(String fileName) {
+      String n = fileName.toLowerCase(Locale.ROOT);
+      int dot = n.lastIndexOf('.');
+      if (dot >= 0 && exts.contains(n.substring(dot))) return true;
+      for (String ext : compoundExts) if (n.endsWith(ext)) return true;
+      return false;
+    }
+
+    boolean excluded(Path root, Path p) {
+      if (p.equals(root)) return false;
+      Path name = p.getFileName();
+      for (PathMatcher m : nameGlobs) if (m.matches(name)) return true;
+      if (!pathGlobs.isEmpty()) {
+        Path rel = root.relativize(p);
+        for (PathMatcher m : pathGlobs) if (m.matches(rel)) return true;
+      }
+      return false;
+    }
+
+    void walk(Path root, FileSink sink) throws IOException {
+      walk(root, root, sink);
+    }
+
+    // Supported, non-excluded regular files under `start` (a directory inside `root`), in walk order
+    void walk(Path root, Path start, FileSink sink) throws IOException {
+      Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+          return excluded(root, dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          if (!isSupported(file.getFileName().toString()) || excluded(root, file)) return FileVisitResult.CONTINUE;
+          if (attrs.isSymbolicLink()) {
+            // Files.walk + isRegularFile followed file links; keep scanning what they point to
+            try { attrs = Files.readAttributes(file, BasicFileAttributes.class); }
+            catch (IOException ex) { return FileVisitResult.CONTINUE; }
+          }
+          if (attrs.isRegularFile()) sink.accept(file, attrs);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException ex) {
+          System.err.println("[WARN] Cannot read " + file + " - " + ex.getMessage());
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+
+    void walkDirectories(Path root, Path start, DirSink sink) throws IOException {
+      Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+          if (excluded(root, dir)) return FileVisitResult.SKIP_SUBTREE;
+          sink.accept(dir);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException ex) {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+  }
+
+  // --depGraph=<file>: which source files under the two roots reference which, for batch planning and impact
+  // analysis in the migration orchestrator. No compiler involved, references are read off the text:
+  //   .java            package, imports (single-type, on-demand, static), fully qualified names in the code, and
+  //                    capitalised simple names resolved against the own package and the on-demand imports
+  //   .jsp/.jspf/.tag  page/tag import directives, fully qualified names (jsp:useBean class=...), simple names
+  //                    resolved against the imports, and <%@ include file> / <jsp:include page> of other pages
+  // Comments are skipped in .java; string literals are kept (Class.forName("a.b.C") is a real dependency).
+  // Only references to files under the roots become edges; JDK and library types are dropped. Over-approximates:
+  // a name that merely looks like a type of the same package still counts.
+  // File format (gzip): MAGIC, VERSION, node count n, n node paths (<root dir name>\<path under root>, so
+  // src\com\fpms\... and ls_web\jsp\... as in the batch workbook), n + 1 row offsets, then the target node of
+  // every edge grouped by source node (compressed sparse rows), each row sorted and without duplicates.
+  static final class DependencyGraph {
+    static final String MAGIC = "JMS-DEPGRAPH";
+    static final int VERSION = 1;
+    static final Set<String> EXTS = new LinkedHashSet<>(Arrays.asList(".java", ".jsp", ".jspf", ".tag"));
+
+    private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+    private static final Pattern IMPORT = Pattern.compile("^\\s*import\\s+(static\\s+)?([\\w.]+?)(\\.\\*)?\\s*;", Pattern.MULTILINE);
+    private static final Pattern TOP_LEVEL_TYPE = Pattern.compile(
+        "^(?:(?:public|final|abstract|sealed|non-sealed|strictfp)\\s+)*(?:class|interface|enum|record|@interface)\\s+(\\w+)",
+        Pattern.MULTILINE);
+    private static final Pattern QUALIFIED = Pattern.compile("\\b((?:[a-z_]\\w*\\.)+[A-Z]\\w*)");
+    private static final Pattern SIMPLE = Pattern.compile("\\b[A-Z]\\w*\\b");
+    private static final Pattern PAGE_IMPORT = Pattern.compile(
+        "<%@\\s*(?:page|tag)\\b[^%]*?\\bimport\\s*=\\s*\"([^\"]*)\"", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INCLUDE = Pattern.compile(
+        "<%@\\s*include\\s+file\\s*=\\s*\"([^\"<]+)\"|<jsp:include\\s+page\\s*=\\s*\"([^\"<]+)\"", Pattern.CASE_INSENSITIVE);
+
+    // What one file declares and mentions, before names are resolved to nodes (built on the worker threads)
+    static final class Parsed {
+      final int node;
+      final boolean java;
+      String pkg = "";
+      final List<String> declared = new ArrayList<>();
+      final Set<String> qualified = new HashSet<>();   // a.b.C from imports and code
+      final Set<String> onDemand = new HashSet<>();    // a.b from import a.b.*
+      final Set<String> simple = new HashSet<>();      // C
+      final Set<String> includes = new HashSet<>();    // included pages, resolved to node paths
+      Parsed(int node, boolean java) { this.node = node; this.java = java; }
+    }
+
+    final List<String> nodes = new ArrayList<>();
+    private int[] offsets;
+    private int[] targets;
+
+    int nodeCount() { return nodes.size(); }
+    int edgeCount() { return targets.length; }
+
+    static DependencyGraph build(List<Path> roots, SourceWalker walker, ForkJoinPool pool, boolean debug) throws IOException {
+      DependencyGraph g = new DependencyGraph();
+      Map<String, Integer> byPath = new HashMap<>();
+      List<ForkJoinTask<Parsed>> tasks = new ArrayList<>();
+      for (Path r : roots) {
+        Path root = r.toAbsolutePath().normalize();
+        String rootName = root.getFileName() == null ? "" : root.getFileName().toString();
+        if (debug) System.out.println("[DEBUG] Dependency graph root: " + root);
+        walker.walk(root, (p, attrs) -> {
+          int node = g.nodes.size();
+          String path = nodePath(rootName, root.relativize(p).toString());
+          g.nodes.add(path);
+          byPath.put(path.toLowerCase(Locale.ROOT), node);
+          if (pool == null) tasks.add(ForkJoinTask.adapt(() -> parse(node, p, root, rootName)));
+          else tasks.add(pool.submit(() -> parse(node, p, root, rootName)));
+        });
+      }
+
+      List<Parsed> parsed = new ArrayList<>(tasks.size());
+      Map<String, Integer> types = new HashMap<>();
+      for (ForkJoinTask<Parsed> t : tasks) {
+        if (pool == null) t.invoke();
+        Parsed f = join(t);
+        parsed.add(f);
+        for (String type : f.declared) types.putIfAbsent(type, f.node);
+      }
+
+      g.offsets = new int[g.nodes.size() + 1];
+      int[] targets = new int[1024];
+      int m = 0;
+      for (Parsed f : parsed) {
+        TreeSet<Integer> row = new TreeSet<>();
+        for (String q : f.qualified) addType(row, types, q);
+        for (String s : f.simple) {
+          if (f.java) addExact(row, types, f.pkg.isEmpty() ? s : f.pkg + '.' + s);
+          for (String p : f.onDemand) addExact(row, types, p + '.' + s);
+        }
+        for (String inc : f.includes) {
+          Integer to = byPath.get(inc.toLowerCase(Locale.ROOT));
+          if (to != null) row.add(to);
+        }
+        row.remove(f.node);
+        if (m + row.size() > targets.length) targets = Arrays.copyOf(targets, Math.max(targets.length * 2, m + row.size()));
+        for (int to : row) targets[m++] = to;
+        g.offsets[f.node + 1] = m;
+      }
+      g.targets = Arrays.copyOf(targets, m);
+      return g;
+    }
+
+    private static String nodePath(String rootName, String rel) {
+      rel = rel.replace('/', '\\');
+      return rootName.isEmpty() ? rel : rootName + '\\' + rel;
+    }
+
+    // a.b.C, a.b.C.Inner or a.b.C.member: the longest prefix that is a known type
+    private static void addType(Set<Integer> row, Map<String, Integer> types, String name) {
+      while (true) {
+        Integer to = types.get(name);
+        if (to != null) { row.add(to); return; }
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) return;
+        name = name.substring(0, dot);
+      }
+    }
+
+    private static void addExact(Set<Integer> row, Map<String, Integer> types, String name) {
+      Integer to = types.get(name);
+      if (to != null) row.add(to);
+    }
+
+    static Parsed parse(int node, Path file, Path root, String rootName) {
+      String name = file.getFileName().toString();
+      boolean java = name.toLowerCase(Locale.ROOT).endsWith(".java");
+      Parsed f = new Parsed(node, java);
+      CharSequence text;
+      try {
+        text = readContentWithFallback(file);
+      } catch (IOException ex) {
+        // Locked or unreadable: warn and keep the node without references, as the scan skips such files
+        System.err.println("[WARN] Cannot read " + file + " - " + ex.getMessage());
+        return f;
+      }
+      if (java) {
+        text = stripComments(text);
+        Matcher pm = PACKAGE.matcher(text);
+        if (pm.find()) f.pkg = pm.group(1);
+        String prefix = f.pkg.isEmpty() ? "" : f.pkg + '.';
+        f.declared.add(prefix + name.substring(0, name.length() - ".java".length()));
+        Matcher tm = TOP_LEVEL_TYPE.matcher(text);
+        while (tm.find()) {
+          String type = prefix + tm.group(1);
+          if (!f.declared.contains(type)) f.declared.add(type);
+        }
+        Matcher im = IMPORT.matcher(text);
+        while (im.find()) {
+          String target = im.group(2);
+          if (im.group(3) != null && im.group(1) == null) f.onDemand.add(target);
+          f.qualified.add(target); // static imports and a.b.C.* resolve to the type C
+        }
+      } else {
+        Matcher im = PAGE_IMPORT.matcher(text);
+        while (im.find()) {
+          for (String s : im.group(1).split(",")) {
+            s = s.trim();
+            if (s.endsWith(".*")) f.onDemand.add(s.substring(0, s.length() - 2));
+            else if (!s.isEmpty()) f.qualified.add(s);
+          }
+        }
+        Matcher inc = INCLUDE.matcher(text);
+        Path dir = root.relativize(file).getParent();
+        while (inc.find()) {
+          String page = (inc.group(1) != null ? inc.group(1) : inc.group(2)).trim();
+          int q = page.indexOf('?');
+          if (q >= 0) page = page.substring(0, q);
+          Path target = page.startsWith("/") ? Paths.get(page.substring(1))
+              : dir == null ? Paths.get(page) : dir.resolve(page);
+          target = target.normalize();
+          if (!target.toString().isEmpty() && !target.startsWith("..")) f.includes.add(nodePath(rootName, target.toString()));
+        }
+      }
+      Matcher qm = QUALIFIED.matcher(text);
+      while (qm.find()) f.qualified.add(qm.group(1));
+      Matcher sm = SIMPLE.matcher(text);
+      while (sm.find()) f.simple.add(sm.group());
+      return f;
+    }
+
+    // Java text with // and /* */ comments blanked out; string and char literals kept as they are
+    static CharSequence stripComments(CharSequence s) {
+      StringBuilder out = new StringBuilder(s.length());
+      int n = s.length();
+      int i = 0;
+      while (i < n) {
+        char c = s.charAt(i);
+        if (c == '/' && i + 1 < n && s.charAt(i + 1) == '/') {
+          while (i < n && s.charAt(i) != '\n') i++;
+        } else if (c == '/' && i + 1 < n && s.charAt(i + 1) == '*') {
+          i += 2;
+          while (i < n && !(s.charAt(i) == '*' && i + 1 < n && s.charAt(i + 1) == '/')) {
+            if (s.charAt(i) == '\n') out.append('\n');
+            i++;
+          }
+          i += 2;
+          out.append(' ');
+        } else if (c == '"' || c == '\'') {
+          out.append(c);
+          i++;
+          while (i < n && s.charAt(i) != c && s.charAt(i) != '\n') {
+            if (s.charAt(i) == '\\' && i + 1 < n) out.append(s.charAt(i++));
+            out.append(s.charAt(i++));
+          }
+          if (i < n) out.append(s.charAt(i++));
+        } else {
+          out.append(c);
+          i++;
+        }
+      }
+      return out;
+    }
+
+    void save(Path target) throws IOException {
+      Path parent = target.toAbsolutePath().getParent();
+      if (parent != null) Files.createDirectories(parent);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new java.util.zip.GZIPOutputStream(Files.newOutputStream(target), 1 << 16)))) {
+        out.writeUTF(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(nodes.size());
+        for (String p : nodes) out.writeUTF(p);
+        for (int o : offsets) out.writeInt(o);
+        for (int t : targets) out.writeInt(t);
+      }
+    }
+  }
+
+  // --format=columnar: the findings of one run in output.csv row order, column by column (gzip):
+  //   header     MAGIC, VERSION, ApplicationName
+  //   patterns   dictionary of the pattern rows that have findings (PatternEntry.fields)
+  //   files      dictionary of (FileType, FilePathName)
+  //   rows       pattern index[], file index[], LineNo[] as int columns
+  //   snippets   FoundContent as one UTF-8 pool with n + 1 offsets
+  // The per-hit pattern metadata (Fix, RemediationDescription, ...) that output.csv repeats on every row is stored once.
+  static final class FindingsStore {
+    private static final String MAGIC = "JMS-FINDINGS";
+    private static final int VERSION = 1;
+
+    final String applicationName;
+    final List<PatternEntry> patterns; // compiled/literals are null
+    final String[] fileTypes;
+    final String[] filePaths;
+    final int[] patternIndex;
+    final int[] fileIndex;
+    final int[] lineNo;
+    private final byte[] snippetPool;
+    private final int[] snippetOffsets;
+
+    private FindingsStore(String applicationName, List<PatternEntry> patterns, String[] fileTypes, String[] filePaths,
+                          int[] patternIndex, int[] fileIndex, int[] lineNo, byte[] snippetPool, int[] snippetOffsets) {
+      this.applicationName = applicationName;
+      this.patterns = patterns;
+      this.fileTypes = fileTypes;
+      this.filePaths = filePaths;
+      this.patternIndex = patternIndex;
+      this.fileIndex = fileIndex;
+      this.lineNo = lineNo;
+      this.snippetPool = snippetPool;
+      this.snippetOffsets = snippetOffsets;
+    }
+
+    int size() { return lineNo.length; }
+    PatternEntry pattern(int row) { return patterns.get(patternIndex[row]); }
+    String fileType(int row) { return fileTypes[fileIndex[row]]; }
+    String filePath(int row) { return filePaths[fileIndex[row]]; }
+    int lineNo(int row) { return lineNo[row]; }
+
+    String snippet(int row) {
+      int from = snippetOffsets[row];
+      return new String(snippetPool, from, snippetOffsets[row + 1] - from, StandardCharsets.UTF_8);
+    }
+
+    static FindingsStore read(Path file) throws IOException {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+          new java.util.zip.GZIPInputStream(Files.newInputStream(file), 1 << 16)))) {
+        if (!MAGIC.equals(in.readUTF())) throw new IOException("Not a findings file: " + file);
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported findings file version " + version + ": " + file);
+        String app = readString(in);
+        List<PatternEntry> patterns = new ArrayList<>();
+        int np = in.readInt();
+        for (int i = 0; i < np; i++) {
+          String[] f = new String[PatternEntry.FIELD_COUNT];
+          for (int k = 0; k < f.length; k++) f[k] = readString(in);
+          patterns.add(PatternEntry.fromFields(f, null, null));
+        }
+        int nf = in.readInt();
+        String[] types = new String[nf];
+        String[] paths = new String[nf];
+        for (int i = 0; i < nf; i++) { types[i] = readString(in); paths[i] = readString(in); }
+        int n = in.readInt();
+        int[] pat = readInts(in, n);
+        int[] fil = readInts(in, n);
+        int[] lines = readInts(in, n);
+        int[] offsets = readInts(in, n + 1);
+        byte[] pool = new byte[in.readInt()];
+        in.readFully(pool);
+        return new FindingsStore(app, patterns, types, paths, pat, fil, lines, pool, offsets);
+      }
+    }
+
+    // Same bytes output.csv would have had for this run
+    void writeCsv(Path target) throws IOException {
+      try (BufferedWriter w = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(target), StandardCharsets.UTF_8))) {
+        w.write(CSV_HEADER);
+        w.newLine();
+        CsvRowWriter out = new CsvRowWriter(w, applicationName);
+        int currentFile = -1;
+        for (int row = 0; row < size(); row++) {
+          if (fileIndex[row] != currentFile) {
+            currentFile = fileIndex[row];
+            out.startFile(fileTypes[currentFile], filePaths[currentFile]);
+          }
+          out.writeRow(pattern(row), lineNo[row], snippet(row));
+        }
+      }
+    }
+
+    private static int[] readInts(DataInputStream in, int n) throws IOException {
+      int[] a = new int[n];
+      for (int i = 0; i < n; i++) a[i] = in.readInt();
+      return a;
+    }
+
+    static final class Writer implements FindingSink {
+      private final String applicationName;
+      private final Map<PatternEntry, Integer> patternIds = new IdentityHashMap<>();
+      private final List<PatternEntry> patterns = new ArrayList<>();
+      private final List<String> fileTypes = new ArrayList<>();
+      private final List<String> filePaths = new ArrayList<>();
+      private final ByteArrayOutputStream pool = new ByteArrayOutputStream(1 << 16);
+      private int[] pat = new int[1024];
+      private int[] fil = new int[1024];
+      private int[] lines = new int[1024];
+      private int[] offsets = new int[1025];
+      private int n;
+      private String pendingType;
+      private String pendingPath;
+      private int currentFile = -1;
+
+      Writer(String applicationName) { this.applicationName = applicationName; }
+
+      int size() { return n; }
+
+      @Override
+      public void startFile(String fileType, String filePathName) {
+        // Added on the first row only, so files without findings cost nothing
+        pendingType = fileType;
+        pendingPath = filePathName;
+        currentFile = -1;
+      }
+
+      @Override
+      public void writeRow(PatternEntry p, int lineNo, String foundContent) {
+        if (currentFile < 0) {
+          currentFile = filePaths.size();
+          fileTypes.add(pendingType);
+          filePaths.add(pendingPath);
+        }
+        Integer id = patternIds.get(p);
+        if (id == null) {
+          id = patterns.size();
+          patternIds.put(p, id);
+          patterns.add(p);
+        }
+        if (n == lines.length) {
+          int cap = n * 2;
+          pat = Arrays.copyOf(pat, cap);
+          fil = Arrays.copyOf(fil, cap);
+          lines = Arrays.copyOf(lines, cap);
+          offsets = Arrays.copyOf(offsets, cap + 1);
+        }
+        byte[] b = foundContent.getBytes(StandardCharsets.UTF_8);
+        pool.write(b, 0, b.length);
+        pat[n] = id;
+        fil[n] = currentFile;
+        lines[n] = lineNo;
+        offsets[n + 1] = pool.size();
+        n++;
+      }
+
+      void save(Path target) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new java.util.zip.GZIPOutputStream(Files.newOutputStream(target), 1 << 16)))) {
+          out.writeUTF(MAGIC);
+          out.writeInt(VERSION);
+          writeString(out, applicationName);
+          out.writeInt(patterns.size());
+          for (PatternEntry p : patterns) for (String f : p.fields()) writeString(out, f);
+          out.writeInt(filePaths.size());
+          for (int i = 0; i < filePaths.size(); i++) {
+            writeString(out, fileTypes.get(i));
+            writeString(out, filePaths.get(i));
+          }
+          out.writeInt(n);
+          writeInts(out, pat, n);
+          writeInts(out, fil, n);
+          writeInts(out, lines, n);
+          writeInts(out, offsets, n + 1);
+          out.writeInt(pool.size());
+          pool.writeTo(out);
+        }
+      }
+
+      private static void writeInts(DataOutputStream out, int[] a, int n) throws IOException {
+        for (int i = 0; i < n; i++) out.writeInt(a[i]);
+      }
+    }
+  }
+
+  // Per-file match buffer produced by a worker and consumed by the ordered output stage.
+  static class FileScan {
+    final Path file;
+    final List<Hit> hits = new ArrayList<>();
+    String filePathName;
+    Object fileKey; // dedupe identity, see fileKey()
+    String fileType;
+    IOException error;
+    FileScan(Path file) { this.file = file; }
+  }
+
+  static class Hit {
+    final PatternEntry pattern;
+    final int lineNo;
+    final int start;
+    final String snippet;
+    Hit(PatternEntry pattern, int lineNo, int start, String snippet) {
+      this.pattern = pattern;
+      this.lineNo = lineNo;
+      this.start = start;
+      this.snippet = snippet;
+    }
+  }
+
+  static class PatternEntry {
+    final String patternID;
+    final String patternSet;
+    final String patternNature;
+    final String patternName;
+    final String patternDescription;
+    final String regex;
+    final String fix;
+    final String remediation;
+    final String remediationDescription;
+    final String remediationEffort;
+    final String mandays;
+    final String jdk8;
+    final String jdk21;
+    final String status;
+    final String plan;
+    final String scriptable;
+    final Pattern compiled;
+    final String[] literals; // lower-cased; every match contains one of them (null = no usable literal)
+    final String csvHead;    // PatternID..PatternDescription, escaped for output.csv
+    final String csvTail;    // Fix..ScriptableBySearchReplace, escaped for output.csv
+    int dedupeId;            // same value for rows with the same PatternID, see assignDedupeIds
+    PatternEntry(String patternID, String patternSet, String patternNature,
+                 String patternName, String patternDescription,
+                 String regex, String fix,
+                 String remediation, String remediationDescription, String remediationEffort, String mandays,
+                 String jdk8, String jdk21, String status, String plan, String scriptable,
+                 Pattern compiled, String[] literals) {
+      this.patternID = patternID;
+      this.patternSet = patternSet;
+      this.patternNature = patternNature;
+      this.patternName = patternName;
+      this.patternDescription = patternDescription;
+      this.regex = regex;
+      this.fix = fix;
+      this.remediation = remediation;
+      this.remediationDescription = remediationDescription;
+      this.remediationEffort = remediationEffort;
+      this.mandays = mandays;
+      this.jdk8 = jdk8;
+      this.jdk21 = jdk21;
+      this.status = status;
+      this.plan = plan;
+      this.scriptable = scriptable;
+      this.compiled = compiled;
+      this.literals = literals;
+      this.csvHead = csv(patternID) + ',' + csv(patternName) + ',' + csv(patternSet) + ','
+          + csv(patternNature) + ',' + csv(patternDescription);
+      this.csvTail = csv(fix) + ',' + csv(remediationDescription) + ',' + csv(remediationEffort) + ','
+          + csv(formatMandays(mandays)) + ',' + csv(jdk8) + ',' + csv(jdk21) + ',' + csv(status) + ','
+          + csv(plan) + ',' + csv(remediation) + ',' + csv(scriptable);
+    }
+
+    static final int FIELD_COUNT = 16;
+
+    // Row fields in constructor order, as PatternSnapshot and FindingsStore persist them
+    String[] fields() {
+      return new String[]{patternID, patternSet, patternNature, patternName, patternDescription, regex, fix,
+          remediation, remediationDescription, remediationEffort, mandays, jdk8, jdk21, status, plan, scriptable};
+    }
+
+    static PatternEntry fromFields(String[] f, Pattern compiled, String[] literals) {
+      return new PatternEntry(f[0], f[1], f[2], f[3], f[4], f[5], f[6], f[7], f[8], f[9], f[10],
+          f[11], f[12], f[13], f[14], f[15], compiled, literals);
+    }
+  }
 }
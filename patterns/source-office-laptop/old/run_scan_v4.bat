@@ -10,7 +10,17 @@ REM RECOMMENDED flag syntax (CMD safe):
 REM   --exts ".java,.jsp,.xml,.properties,.yml,.yaml" --debug
 REM Optional:
 REM   --normalizeRegex
+REM   --exclude="target,node_modules,ls_web/WEB-INF/lib"  (skip folders/files by name or by path under the root; .git/.svn/.hg always skipped)
 REM   --libDir="D:\Users\...\combined_lib"
+REM   --threads=N  (parallel scan; default = number of cores, 1 = sequential)
+REM   --incremental="D:\Users\...\scan_cache"  (reuse rows of unchanged files/patterns between runs)
+REM   --profile  (per-pattern matcher cost, writes pattern_profile.csv next to output.csv)
+REM   --regexTimeoutMs=N  (abort a regex after N ms on one file, logged to regex_timeouts.csv)
+REM   --noPatternSnapshot  (always parse the CSV; default reuses <csv>.snapshot.bin while the CSV is unchanged)
+REM   --format=columnar  (compact output.cols instead of output.csv; "both" writes the two)
+REM   --daemon[=port]  (stay running, rescan saved files, serve http://127.0.0.1:port/findings.csv; Ctrl+C to stop)
+REM   --bytecode  (scan compiled code: <javaSrcDir>/<jspSrcDir> = classes dir and combined_lib; jars and .class files, same CSV columns)
+REM   --depGraph="D:\Users\...\fpms_depgraph.bin"  (no scan: write the source dependency graph of the two roots for MigrationOrchestrator --depGraph)
 REM ============================================
 
 pushd "%~dp0" >nul
@@ -102,8 +112,17 @@ if exist "%OUTCSV%" (
   echo [WARN] output.csv not found; nothing to rename.
 )
 
+set "OUTCOLS=%CD%\output.cols"
+set "TARGETCOLS=%CD%\%APP%-src-output_%STAMP%.cols"
+if exist "%OUTCOLS%" (
+  echo [STEP] Found output.cols - renaming to "%TARGETCOLS%"
+  del /q "%TARGETCOLS%" >nul 2>&1
+  ren "output.cols" "%APP%-src-output_%STAMP%.cols"
+)
+
 echo [RESULT] Exit code: %RC%
 if exist "%TARGETCSV%" echo [RESULT] Output CSV: "%TARGETCSV%"
+if exist "%TARGETCOLS%" echo [RESULT] Output columnar: "%TARGETCOLS%"
 
 popd >nul
 exit /b %RC%
@@ -1,13 +1,75 @@
 package com.fpms.migration;
 
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.Recipe;
+import org.openrewrite.RecipeRun;
+import org.openrewrite.Result;
+import org.openrewrite.SourceFile;
+import org.openrewrite.config.Environment;
+import org.openrewrite.config.YamlResourceLoader;
+import org.openrewrite.internal.InMemoryLargeSourceSet;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.tree.ParseError;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 import org.yaml.snakeyaml.Yaml;
 
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.ModuleElement;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
 import java.io.*;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * FPMS Migration Orchestrator - Windows Edition
@@ -19,6 +81,7 @@ import java.util.*;
  * Usage:
  *   java -jar migration-tool.jar PHASE1 BATCH1 dryrun
  *   java -jar migration-tool.jar PHASE1 BATCH1 actualrun ICCF12345
+ *   java -jar migration-tool.jar PHASE2 BATCH1,BATCH2,BATCH3 dryrun   (pipelined multi-batch run)
  */
 public class MigrationOrchestrator {
     
@@ -27,13 +90,40 @@ public class MigrationOrchestrator {
     private static final String PHASE1_EXCEL = "phase1_all_batches_amended.xlsx";
     private static final String PHASE2_EXCEL = "phase2_all_batches_amended.xlsx";
     private static final String FILE_LIST_EXCEL = "fpms_src_files_by_phase_batch.xlsx";
+    private static final int DEFAULT_STAGE_THREADS = 8;
+    private static final int DEFAULT_MAX_HEAVY = 1;
+    private static final int[] COMPILE_RELEASES = {8, 21};
+    private static final int MAX_LOGGED_ERRORS = 20;
+    private static final String COMPILE_CACHE = ".\\compile_cache";
+    
+    // One cache directory per release; batches of a multi-batch run take turns on it
+    private static final Map<Integer, Object> COMPILE_CACHE_LOCKS = new ConcurrentHashMap<>();
+    // Jars for OpenRewrite type attribution (offline; nothing is resolved from a repository)
+    private static final String DEFAULT_REWRITE_CLASSPATH = PROJECT_ROOT + "\\ls_web\\WEB-INF\\lib";
+    
+    // Serialises dmcli checkout/checkin and the copies in and out of fpms_module between batches of a multi-batch run
+    private static final Object DIMENSION_LOCK = new Object();
     
     private String phase;
     private String batch;
+    private List<String> batches; // more than one = pipelined multi-batch run
     private String workDir;
     private String mode; // "dryrun" or "actualrun"
     private String iccfNumber;
     private boolean cleanFirst = false;
+    private int stageThreads = DEFAULT_STAGE_THREADS;
+    private int maxHeavy = DEFAULT_MAX_HEAVY;
+    private String rewriteEngine = "embedded"; // "embedded" (in-process) or "maven"
+    private String rewriteClasspath = DEFAULT_REWRITE_CLASSPATH;
+    private boolean useCompileCache = true;
+    private String depGraphFile; // JdkMigrationScanner --depGraph output, for impact analysis
+    private String logPrefix = ""; // "[PHASE/BATCH] " inside a multi-batch run
+    private List<String> impactedFiles;
+    
+    // Support workbooks are read once (streaming) and indexed; see XlsxIndex
+    private Map<String, List<String>> impactedFilesIndex;
+    private Map<String, List<String>> recipeCellsIndex;
+    private DependencyGraph dependencyGraph;
     
     public static void main(String[] args) {
         if (args.length < 3) {
@@ -55,6 +145,7 @@ public class MigrationOrchestrator {
         System.out.println("Arguments:");
         System.out.println("  PHASE        Phase number (PHASE1, PHASE2)");
         System.out.println("  BATCH        Batch number (BATCH1, BATCH2, etc.)");
+        System.out.println("               or a comma list (BATCH1,BATCH2,BATCH3) for a pipelined multi-batch run");
         System.out.println("  MODE         dryrun | actualrun");
         System.out.println();
         System.out.println("For ACTUALRUN:");
@@ -62,6 +153,12 @@ public class MigrationOrchestrator {
         System.out.println();
         System.out.println("Options:");
         System.out.println("  --clean      Clean working directory before run");
+        System.out.println("  --stageThreads=N  Parallel file copies while staging (default " + DEFAULT_STAGE_THREADS + ")");
+        System.out.println("  --maxHeavy=N      Multi-batch: batches in OpenRewrite/compile at once (default " + DEFAULT_MAX_HEAVY + ")");
+        System.out.println("  --rewrite=embedded|maven  Run OpenRewrite in-process (default) or via the Maven plugin");
+        System.out.println("  --rewriteClasspath=DIR    Jars for OpenRewrite type attribution (default " + DEFAULT_REWRITE_CLASSPATH + ")");
+        System.out.println("  --noCompileCache  Compile each batch from scratch instead of against " + COMPILE_CACHE);
+        System.out.println("  --depGraph=FILE   Impact analysis from JdkMigrationScanner --depGraph (reports\\impact_analysis.txt)");
         System.out.println();
         System.out.println("Examples:");
         System.out.println("  Dry run (copy files locally):");
@@ -73,6 +170,9 @@ public class MigrationOrchestrator {
         System.out.println("  Actual run (Dimension checkout/checkin):");
         System.out.println("    java -jar migration-tool.jar PHASE1 BATCH1 actualrun ICCF12345");
         System.out.println();
+        System.out.println("  Several batches (next batch is staged while the previous one is in OpenRewrite):");
+        System.out.println("    java -jar migration-tool.jar PHASE2 BATCH1,BATCH2,BATCH3 dryrun --maxHeavy=2");
+        System.out.println();
         System.out.println("Batch file usage:");
         System.out.println("  run_migration.bat PHASE1 BATCH1 dryrun");
         System.out.println("  run_migration.bat PHASE1 BATCH1 actualrun ICCF12345");
@@ -80,7 +180,17 @@ public class MigrationOrchestrator {
     
     private void parseArgs(String[] args) {
         this.phase = args[0].toUpperCase();
-        this.batch = args[1].toUpperCase();
+        this.batches = new ArrayList<>();
+        for (String b : args[1].toUpperCase().split(",")) {
+            if (!b.trim().isEmpty() && !batches.contains(b.trim())) {
+                batches.add(b.trim());
+            }
+        }
+        if (batches.isEmpty()) {
+            error("No batch given: " + args[1]);
+            System.exit(1);
+        }
+        this.batch = batches.get(0);
         this.mode = args[2].toLowerCase();
         this.workDir = PROJECT_ROOT + "\\" + phase + "_" + batch;
         
@@ -93,10 +203,26 @@ public class MigrationOrchestrator {
             this.iccfNumber = args[3];
         }
         
-        // Check for --clean flag
+        // Check for --clean / --stageThreads=N / --maxHeavy=N flags
         for (int i = 3; i < args.length; i++) {
             if ("--clean".equals(args[i])) {
                 this.cleanFirst = true;
+            } else if (args[i].startsWith("--stageThreads=")) {
+                this.stageThreads = parseCountFlag(args[i]);
+            } else if (args[i].startsWith("--maxHeavy=")) {
+                this.maxHeavy = parseCountFlag(args[i]);
+            } else if (args[i].startsWith("--rewrite=")) {
+                this.rewriteEngine = args[i].substring("--rewrite=".length()).toLowerCase();
+                if (!"embedded".equals(rewriteEngine) && !"maven".equals(rewriteEngine)) {
+                    error("Invalid --rewrite: " + rewriteEngine + " (expected embedded or maven)");
+                    System.exit(1);
+                }
+            } else if (args[i].startsWith("--rewriteClasspath=")) {
+                this.rewriteClasspath = args[i].substring("--rewriteClasspath=".length());
+            } else if ("--noCompileCache".equals(args[i])) {
+                this.useCompileCache = false;
+            } else if (args[i].startsWith("--depGraph=")) {
+                this.depGraphFile = args[i].substring("--depGraph=".length());
             }
         }
         
@@ -108,7 +234,27 @@ public class MigrationOrchestrator {
         }
     }
     
+    private int parseCountFlag(String arg) {
+        String value = arg.substring(arg.indexOf('=') + 1);
+        int count;
+        try {
+            count = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            count = 0;
+        }
+        if (count < 1) {
+            error("Invalid " + arg.substring(0, arg.indexOf('=')) + ": " + value + " (expected a number >= 1)");
+            System.exit(1);
+        }
+        return count;
+    }
+    
     private void execute() {
+        if (batches.size() > 1) {
+            executePipeline();
+            return;
+        }
+        
         log("═══════════════════════════════════════════════════════════");
         log("FPMS Migration Orchestrator - Windows Edition");
         log("═══════════════════════════════════════════════════════════");
@@ -123,61 +269,8 @@ public class MigrationOrchestrator {
         log();
         
         try {
-            // Step 1: Validate inputs
-            step("STEP 1: Validating inputs...");
-            validateInputs();
-            
-            // Step 2: Clean if requested
-            if (cleanFirst) {
-                step("STEP 2: Cleaning working directory...");
-                cleanWorkDir();
-            }
-            
-            // Step 3: Create working directory
-            step("STEP 3: Creating working directory...");
-            createWorkingDirectory();
-            
-            // Step 4: Read file list from Excel
-            step("STEP 4: Reading impacted file list...");
-            List<String> impactedFiles = readImpactedFiles();
-            log("  Found " + impactedFiles.size() + " impacted files");
-            
-            // Step 5: Get source files (dryrun vs actualrun)
-            if ("dryrun".equals(mode)) {
-                step("STEP 5: Copying files from fpms_module (DRYRUN mode)...");
-                copyFilesFromLocal(impactedFiles);
-            } else {
-                step("STEP 5: Checking out files from Dimension (ACTUALRUN mode)...");
-                checkoutFromDimension(impactedFiles);
-                copyFilesAfterCheckout(impactedFiles);
-            }
-            
-            // Step 6: Generate OpenRewrite YAML
-            step("STEP 6: Generating OpenRewrite recipes...");
-            String recipeYaml = generateRecipeYaml();
-            writeRecipeYaml(recipeYaml);
-            
-            // Step 7: Apply OpenRewrite
-            step("STEP 7: Applying OpenRewrite recipes...");
-            applyOpenRewrite();
-            
-            // Step 8: Validate compilation
-            step("STEP 8: Validating compilation...");
-            validateCompilation();
-            
-            // Step 9: Generate reports
-            step("STEP 9: Generating migration report...");
-            generateReport(impactedFiles);
-            
-            // Step 10: Dimension operations (actualrun only)
-            if ("actualrun".equals(mode)) {
-                step("STEP 10: Checking in to Dimension...");
-                copyFilesBackToDimension(impactedFiles);
-                checkinToDimension(impactedFiles);
-            } else {
-                step("STEP 10: Generating Dimension scripts for manual review...");
-                generateDimensionScripts(impactedFiles);
-            }
+            prepare(true);
+            finish();
             
             log();
             success("═══════════════════════════════════════════════════════════");
@@ -204,12 +297,213 @@ public class MigrationOrchestrator {
         }
     }
     
+    /**
+     * Steps 1-6: inputs, working directory, file list, staging and recipe YAML.
+     * The light part of a batch; in a multi-batch run it overlaps the previous batch's finish().
+     */
+    private void prepare(boolean validate) throws Exception {
+        // Step 1: Validate inputs
+        if (validate) {
+            step("STEP 1: Validating inputs...");
+            validateInputs();
+        }
+        
+        // Step 2: Clean if requested
+        if (cleanFirst) {
+            step("STEP 2: Cleaning working directory...");
+            cleanWorkDir();
+        }
+        
+        // Step 3: Create working directory
+        step("STEP 3: Creating working directory...");
+        createWorkingDirectory();
+        
+        // Step 4: Read file list from Excel
+        step("STEP 4: Reading impacted file list...");
+        impactedFiles = readImpactedFiles();
+        log("  Found " + impactedFiles.size() + " impacted files");
+        if (depGraphFile != null) {
+            analyseImpact();
+        }
+        
+        // Step 5: Get source files (dryrun vs actualrun)
+        if ("dryrun".equals(mode)) {
+            step("STEP 5: Copying files from fpms_module (DRYRUN mode)...");
+            copyFilesFromLocal(impactedFiles);
+        } else {
+            step("STEP 5: Checking out files from Dimension (ACTUALRUN mode)...");
+            synchronized (DIMENSION_LOCK) {
+                checkoutFromDimension(impactedFiles);
+                copyFilesAfterCheckout(impactedFiles);
+            }
+        }
+        
+        // Step 6: Generate OpenRewrite YAML
+        step("STEP 6: Generating OpenRewrite recipes...");
+        String recipeYaml = generateRecipeYaml();
+        writeRecipeYaml(recipeYaml);
+    }
+    
+    /** Steps 7-10: OpenRewrite, compilation, report and Dimension. The heavy part of a batch. */
+    private void finish() throws Exception {
+        // Step 7: Apply OpenRewrite
+        step("STEP 7: Applying OpenRewrite recipes...");
+        applyOpenRewrite();
+        
+        // Step 8: Validate compilation
+        step("STEP 8: Validating compilation...");
+        validateCompilation();
+        
+        // Step 9: Generate reports
+        step("STEP 9: Generating migration report...");
+        generateReport(impactedFiles);
+        
+        // Step 10: Dimension operations (actualrun only)
+        if ("actualrun".equals(mode)) {
+            step("STEP 10: Checking in to Dimension...");
+            synchronized (DIMENSION_LOCK) {
+                copyFilesBackToDimension(impactedFiles);
+                checkinToDimension(impactedFiles);
+            }
+        } else {
+            step("STEP 10: Generating Dimension scripts for manual review...");
+            generateDimensionScripts(impactedFiles);
+        }
+    }
+    
+    /**
+     * Multi-batch run. The main thread prepares the batches in order. Each prepared batch is
+     * handed to a pool of maxHeavy threads for finish(). So batch N+1 is staged and gets its
+     * recipe while batch N is still in OpenRewrite. Every batch has its own workDir
+     * (PHASE_BATCH) and log prefix. The workbook indexes are shared, so each workbook is
+     * read once. A failed batch does not stop the others; the exit code is 1 if any failed.
+     * At most maxHeavy + 1 batches are prepared and not yet finished: the main thread waits
+     * before staging the next batch, so staged working directories do not pile up.
+     */
+    private void executePipeline() {
+        log("═══════════════════════════════════════════════════════════");
+        log("FPMS Migration Orchestrator - Windows Edition (multi-batch)");
+        log("═══════════════════════════════════════════════════════════");
+        log("Phase        : " + phase);
+        log("Batches      : " + String.join(", ", batches));
+        log("Mode         : " + mode.toUpperCase());
+        if ("actualrun".equals(mode)) {
+            log("ICCF Number  : " + iccfNumber);
+        }
+        log("Max heavy    : " + maxHeavy + " (batches in OpenRewrite/compile at once)");
+        log("═══════════════════════════════════════════════════════════");
+        log();
+        
+        long start = System.currentTimeMillis();
+        Map<String, Future<?>> heavyRuns = new LinkedHashMap<>();
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        Map<String, String> workDirs = new LinkedHashMap<>();
+        boolean validated = false;
+        
+        ExecutorService heavy = Executors.newFixedThreadPool(maxHeavy);
+        Semaphore inFlight = new Semaphore(maxHeavy + 1); // prepared but not yet finished
+        try {
+            for (String b : batches) {
+                inFlight.acquireUninterruptibly();
+                MigrationOrchestrator run = forBatch(b);
+                workDirs.put(b, run.workDir);
+                try {
+                    run.prepare(!validated);
+                    validated = true;
+                } catch (Exception e) {
+                    run.error("Preparation failed: " + e.getMessage());
+                    failures.put(b, e);
+                    inFlight.release();
+                    continue;
+                } finally {
+                    impactedFilesIndex = run.impactedFilesIndex;
+                    recipeCellsIndex = run.recipeCellsIndex;
+                    dependencyGraph = run.dependencyGraph;
+                }
+                run.log("  Prepared; queued for OpenRewrite/compile");
+                heavyRuns.put(b, heavy.submit(() -> {
+                    try {
+                        run.finish();
+                        run.success("Batch completed: " + run.workDir);
+                        return null;
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            
+            for (Map.Entry<String, Future<?>> e : heavyRuns.entrySet()) {
+                try {
+                    e.getValue().get();
+                } catch (ExecutionException ex) {
+                    Exception cause = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                    error("[" + phase + "/" + e.getKey() + "] Migration failed: " + cause.getMessage());
+                    failures.put(e.getKey(), cause);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    failures.put(e.getKey(), ex);
+                }
+            }
+        } finally {
+            heavy.shutdownNow();
+        }
+        
+        log();
+        log("═══════════════════════════════════════════════════════════");
+        log("Multi-batch summary (" + (System.currentTimeMillis() - start) / 1000 + " s)");
+        log("═══════════════════════════════════════════════════════════");
+        for (String b : batches) {
+            Exception failure = failures.get(b);
+            log("  " + phase + " " + b + " : " + (failure == null ? "OK" : "FAILED - " + failure.getMessage())
+                + "  (" + workDirs.get(b) + ")");
+        }
+        
+        if (!failures.isEmpty()) {
+            error(failures.size() + " of " + batches.size() + " batches failed");
+            System.exit(1);
+        }
+        success("All " + batches.size() + " batches completed successfully!");
+    }
+    
+    /** Orchestrator for one batch of a multi-batch run, sharing settings and workbook indexes. */
+    private MigrationOrchestrator forBatch(String batchName) {
+        MigrationOrchestrator run = new MigrationOrchestrator();
+        run.phase = phase;
+        run.batch = batchName;
+        run.batches = Collections.singletonList(batchName);
+        run.mode = mode;
+        run.iccfNumber = iccfNumber;
+        run.cleanFirst = cleanFirst;
+        run.stageThreads = stageThreads;
+        run.maxHeavy = maxHeavy;
+        run.rewriteEngine = rewriteEngine;
+        run.rewriteClasspath = rewriteClasspath;
+        run.useCompileCache = useCompileCache;
+        run.depGraphFile = depGraphFile;
+        run.workDir = PROJECT_ROOT + "\\" + phase + "_" + batchName;
+        run.logPrefix = "[" + phase + "/" + batchName + "] ";
+        run.impactedFilesIndex = impactedFilesIndex;
+        run.recipeCellsIndex = recipeCellsIndex;
+        run.dependencyGraph = dependencyGraph;
+        return run;
+    }
+    
     private void validateInputs() throws Exception {
         // Check phase format
         if (!phase.matches("PHASE[12]")) {
             throw new Exception("Invalid phase: " + phase + " (expected PHASE1 or PHASE2)");
         }
         
+        // STEP 8 compiles with this JVM's javac; --release 21 needs JDK 21 or later
+        int latest = SourceVersion.latest().ordinal(); // RELEASE_N has ordinal N
+        for (int release : COMPILE_RELEASES) {
+            if (release > latest) {
+                throw new Exception("The migration tool must run on JDK " + release + " or later; running on "
+                    + System.getProperty("java.version") + " (" + System.getProperty("java.home")
+                    + "), which cannot compile --release " + release + ". Set JAVA21_HOME for run_migration.bat.");
+            }
+        }
+        
         // Check Excel files exist
         File phase1Excel = new File(SUPPORT_EXCEL, PHASE1_EXCEL);
         File phase2Excel = new File(SUPPORT_EXCEL, PHASE2_EXCEL);
@@ -268,92 +562,238 @@ public class MigrationOrchestrator {
     }
     
     private List<String> readImpactedFiles() throws Exception {
-        List<String> files = new ArrayList<>();
-        File excelFile = new File(SUPPORT_EXCEL, FILE_LIST_EXCEL);
+        if (impactedFilesIndex == null) {
+            long start = System.currentTimeMillis();
+            impactedFilesIndex = XlsxIndex.impactedFilesByBatch(new File(SUPPORT_EXCEL, FILE_LIST_EXCEL));
+            log("  Indexed " + FILE_LIST_EXCEL + ": " + impactedFilesIndex.size() + " phase/batch groups ("
+                + (System.currentTimeMillis() - start) + " ms)");
+        }
         
-        try (FileInputStream fis = new FileInputStream(excelFile);
-             Workbook workbook = new XSSFWorkbook(fis)) {
-            
-            Sheet sheet = workbook.getSheetAt(0);
-            
-            // Find header row
-            Row headerRow = sheet.getRow(0);
-            int phaseCol = -1, batchCol = -1, filePathCol = -1;
-            
-            for (Cell cell : headerRow) {
-                String value = cell.getStringCellValue().trim().toUpperCase();
-                if ("PHASE".equals(value)) phaseCol = cell.getColumnIndex();
-                else if ("BATCH".equals(value)) batchCol = cell.getColumnIndex();
-                else if ("FILEPATHNAME".equals(value)) filePathCol = cell.getColumnIndex();
+        List<String> files = impactedFilesIndex.get(XlsxIndex.batchKey(phase, batch));
+        return files == null ? new ArrayList<>() : new ArrayList<>(files);
+    }
+    
+    /**
+     * Impact of the batch from the scanner's dependency graph (--depGraph). The batch still stages exactly
+     * the workbook's files; this only reports. Writes reports\impact_analysis.txt with the files that
+     * reference the batch (transitively) and the references to and from other batches of the phase. It also
+     * lists independent groups the batch could be split into, batch files linked more closely to another
+     * batch, and a batch order for the phase that migrates referenced code first.
+     */
+    private void analyseImpact() throws Exception {
+        if (dependencyGraph == null) {
+            long start = System.currentTimeMillis();
+            dependencyGraph = DependencyGraph.read(Paths.get(depGraphFile));
+            log("  Loaded dependency graph " + depGraphFile + ": " + dependencyGraph.size() + " files, "
+                + dependencyGraph.edgeCount() + " references (" + (System.currentTimeMillis() - start) + " ms)");
+        }
+        DependencyGraph graph = dependencyGraph;
+        
+        // Batch of every file of this phase; a file listed in two batches counts for the first
+        String phasePrefix = phase + "/";
+        String[] batchOf = new String[graph.size()];
+        List<String> phaseBatches = new ArrayList<>();
+        for (Map.Entry<String, List<String>> e : impactedFilesIndex.entrySet()) {
+            if (!e.getKey().startsWith(phasePrefix)) {
+                continue;
             }
-            
-            if (phaseCol == -1 || batchCol == -1 || filePathCol == -1) {
-                throw new Exception("Invalid Excel format: missing required columns");
+            String b = e.getKey().substring(phasePrefix.length());
+            phaseBatches.add(b);
+            for (String file : e.getValue()) {
+                int node = graph.node(file);
+                if (node >= 0 && batchOf[node] == null) {
+                    batchOf[node] = b;
+                }
             }
-            
-            // Read matching rows
-            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
-                
-                Cell phaseCell = row.getCell(phaseCol);
-                Cell batchCell = row.getCell(batchCol);
-                Cell filePathCell = row.getCell(filePathCol);
-                
-                if (phaseCell != null && batchCell != null && filePathCell != null) {
-                    String rowPhase = getCellValue(phaseCell).trim().toUpperCase();
-                    String rowBatch = getCellValue(batchCell).trim().toUpperCase();
-                    String filePath = getCellValue(filePathCell).trim();
-                    
-                    if (phase.equals(rowPhase) && batch.equals(rowBatch)) {
-                        // Convert Unix paths to Windows paths
-                        filePath = filePath.replace("/", "\\");
-                        files.add(filePath);
+        }
+        
+        BitSet inBatch = new BitSet();
+        List<String> notInGraph = new ArrayList<>();
+        for (String file : impactedFiles) {
+            int node = graph.node(file);
+            if (node >= 0) {
+                inBatch.set(node);
+            } else {
+                notInGraph.add(file);
+            }
+        }
+        
+        // Transitive dependents: recompiled (and possibly broken) when the batch changes
+        BitSet affected = graph.dependents(inBatch);
+        Map<String, List<String>> affectedByBatch = new TreeMap<>();
+        for (int node = affected.nextSetBit(0); node >= 0; node = affected.nextSetBit(node + 1)) {
+            String b = batchOf[node] == null ? "(no batch)" : batchOf[node];
+            affectedByBatch.computeIfAbsent(b, k -> new ArrayList<>()).add(graph.paths[node]);
+        }
+        
+        // Direct references crossing the batch boundary, and batch files with more links elsewhere
+        Map<String, int[]> crossing = new TreeMap<>(); // other batch -> {batch references it, it references batch}
+        List<String> moves = new ArrayList<>();
+        for (int node = inBatch.nextSetBit(0); node >= 0; node = inBatch.nextSetBit(node + 1)) {
+            Map<String, Integer> links = new HashMap<>();
+            int own = 0;
+            for (int direction = 0; direction < 2; direction++) {
+                for (int other : direction == 0 ? graph.references(node) : graph.referencedBy(node)) {
+                    if (inBatch.get(other)) {
+                        own++;
+                        continue;
+                    }
+                    String b = batchOf[other] == null ? "(no batch)" : batchOf[other];
+                    crossing.computeIfAbsent(b, k -> new int[2])[direction]++;
+                    if (batchOf[other] != null) {
+                        links.merge(b, 1, Integer::sum);
                     }
                 }
             }
+            Map.Entry<String, Integer> closest = null;
+            for (Map.Entry<String, Integer> link : links.entrySet()) {
+                if (closest == null || link.getValue() > closest.getValue()) {
+                    closest = link;
+                }
+            }
+            if (closest != null && closest.getValue() > own) {
+                moves.add(graph.paths[node] + " -> " + closest.getKey() + " (" + closest.getValue()
+                    + " references there, " + own + " in " + batch + ")");
+            }
+        }
+        
+        List<BitSet> groups = graph.independentGroups(inBatch);
+        List<String> order = suggestBatchOrder(graph, batchOf, phaseBatches);
+        
+        int inOtherBatches = 0;
+        for (Map.Entry<String, List<String>> e : affectedByBatch.entrySet()) {
+            if (!"(no batch)".equals(e.getKey())) {
+                inOtherBatches += e.getValue().size();
+            }
+        }
+        int outgoing = 0;
+        int incoming = 0;
+        for (int[] counts : crossing.values()) {
+            outgoing += counts[0];
+            incoming += counts[1];
         }
         
-        return files;
+        if (!notInGraph.isEmpty()) {
+            log("  [WARN] " + notInGraph.size() + " batch files not in the dependency graph");
+        }
+        log("  Affected outside batch: " + affected.cardinality() + " files (" + inOtherBatches + " in other "
+            + phase + " batches, " + (affected.cardinality() - inOtherBatches) + " in no batch)");
+        log("  References across the batch boundary: " + outgoing + " outgoing, " + incoming + " incoming");
+        if (groups.size() > 1) {
+            log("  Batch splits into " + groups.size() + " independent groups (largest "
+                + groups.get(0).cardinality() + " files)");
+        }
+        if (!moves.isEmpty()) {
+            log("  [WARN] " + moves.size() + " batch files reference another batch more than their own");
+        }
+        
+        File reportFile = new File(workDir, "reports\\impact_analysis.txt");
+        try (PrintWriter pw = new PrintWriter(reportFile)) {
+            pw.println("FPMS Impact Analysis");
+            pw.println("====================");
+            pw.println("Phase: " + phase);
+            pw.println("Batch: " + batch);
+            pw.println("Dependency graph: " + depGraphFile + " (" + graph.size() + " files, "
+                + graph.edgeCount() + " references)");
+            pw.println("Date: " + new Date());
+            pw.println();
+            pw.println("Batch files: " + impactedFiles.size() + " (" + notInGraph.size() + " not in the graph)");
+            for (String file : notInGraph) {
+                pw.println("  not in graph: " + file);
+            }
+            pw.println();
+            pw.println("Files affected outside the batch (reference batch files, directly or transitively): "
+                + affected.cardinality());
+            for (Map.Entry<String, List<String>> e : affectedByBatch.entrySet()) {
+                pw.println("  " + e.getKey() + ": " + e.getValue().size());
+                for (String file : e.getValue()) {
+                    pw.println("    " + file);
+                }
+            }
+            pw.println();
+            pw.println("Direct references across the batch boundary (batch -> other / other -> batch):");
+            for (Map.Entry<String, int[]> e : crossing.entrySet()) {
+                pw.println("  " + e.getKey() + ": " + e.getValue()[0] + " / " + e.getValue()[1]);
+            }
+            pw.println();
+            pw.println("Independent groups (no references between groups; splitting here costs no recompilation): "
+                + groups.size());
+            for (int g = 0; g < groups.size(); g++) {
+                BitSet group = groups.get(g);
+                pw.println("  Group " + (g + 1) + " (" + group.cardinality() + " files)");
+                for (int node = group.nextSetBit(0); node >= 0; node = group.nextSetBit(node + 1)) {
+                    pw.println("    " + graph.paths[node]);
+                }
+            }
+            pw.println();
+            pw.println("Files with more references to another batch than to their own: " + moves.size());
+            for (String move : moves) {
+                pw.println("  " + move);
+            }
+            pw.println();
+            pw.println("Suggested " + phase + " batch order (referenced code first): " + String.join(", ", order));
+        }
+        log("  [OK] Impact analysis: " + reportFile.getAbsolutePath());
     }
     
-    private String getCellValue(Cell cell) {
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue();
-            case NUMERIC:
-                return String.valueOf((long) cell.getNumericCellValue());
-            default:
-                return "";
+    /**
+     * Batches of the phase, each next one the batch with the fewest references into the batches still
+     * left (ties keep workbook order). Without cycles between batches this is a topological order, so a
+     * batch is migrated after the batches it references.
+     */
+    private static List<String> suggestBatchOrder(DependencyGraph graph, String[] batchOf, List<String> batches) {
+        Map<String, Map<String, Integer>> refs = new HashMap<>(); // batch -> other batch -> references
+        for (int from = 0; from < batchOf.length; from++) {
+            if (batchOf[from] == null) {
+                continue;
+            }
+            for (int to : graph.references(from)) {
+                if (batchOf[to] != null && !batchOf[to].equals(batchOf[from])) {
+                    refs.computeIfAbsent(batchOf[from], k -> new HashMap<>()).merge(batchOf[to], 1, Integer::sum);
+                }
+            }
+        }
+        
+        List<String> left = new ArrayList<>(batches);
+        List<String> order = new ArrayList<>();
+        while (!left.isEmpty()) {
+            String best = null;
+            int bestRefs = Integer.MAX_VALUE;
+            for (String b : left) {
+                int count = 0;
+                for (Map.Entry<String, Integer> e : refs.getOrDefault(b, Collections.emptyMap()).entrySet()) {
+                    if (left.contains(e.getKey())) {
+                        count += e.getValue();
+                    }
+                }
+                if (count < bestRefs) {
+                    best = b;
+                    bestRefs = count;
+                }
+            }
+            left.remove(best);
+            order.add(best);
         }
+        return order;
     }
     
     private void copyFilesFromLocal(List<String> files) throws Exception {
-        int copied = 0;
-        int missing = 0;
-        
         log("  Mode: DRYRUN - Copying from local fpms_module");
         
-        for (String relPath : files) {
-            File srcFile = new File(PROJECT_ROOT, relPath);
-            File destFile = new File(workDir, relPath);
-            
-            if (!srcFile.exists()) {
-                log("  [WARN] File not found: " + relPath);
-                missing++;
-                continue;
-            }
-            
-            Files.createDirectories(destFile.toPath().getParent());
-            Files.copy(srcFile.toPath(), destFile.toPath(), 
-                      StandardCopyOption.REPLACE_EXISTING);
-            copied++;
-        }
+        FileStager.Result result = new FileStager(stageThreads).stage(Paths.get(PROJECT_ROOT), Paths.get(workDir), files);
         
-        log("  [OK] Copied " + copied + " files");
-        if (missing > 0) {
-            log("  [WARN] Missing " + missing + " files");
+        for (String relPath : result.missing) {
+            log("  [WARN] File not found: " + relPath);
         }
+        log("  [OK] Copied " + result.copied + " files" + skippedSuffix(result));
+        log("  " + result.throughput());
+        if (!result.missing.isEmpty()) {
+            log("  [WARN] Missing " + result.missing.size() + " files");
+        }
+    }
+    
+    private static String skippedSuffix(FileStager.Result result) {
+        return result.skipped == 0 ? "" : ", skipped " + result.skipped + " unchanged";
     }
     
     private void checkoutFromDimension(List<String> files) throws Exception {
@@ -420,23 +860,13 @@ public class MigrationOrchestrator {
     private void copyFilesAfterCheckout(List<String> files) throws Exception {
         log("  Copying checked out files to working directory...");
         
-        int copied = 0;
-        for (String relPath : files) {
-            File srcFile = new File(PROJECT_ROOT, relPath);
-            File destFile = new File(workDir, relPath);
-            
-            if (!srcFile.exists()) {
-                log("  [WARN] Checked out file not found: " + relPath);
-                continue;
-            }
-            
-            Files.createDirectories(destFile.toPath().getParent());
-            Files.copy(srcFile.toPath(), destFile.toPath(), 
-                      StandardCopyOption.REPLACE_EXISTING);
-            copied++;
-        }
+        FileStager.Result result = new FileStager(stageThreads).stage(Paths.get(PROJECT_ROOT), Paths.get(workDir), files);
         
-        log("  [OK] Copied " + copied + " files to working directory");
+        for (String relPath : result.missing) {
+            log("  [WARN] Checked out file not found: " + relPath);
+        }
+        log("  [OK] Copied " + result.copied + " files to working directory" + skippedSuffix(result));
+        log("  " + result.throughput());
     }
     
     private String generateRecipeYaml() throws Exception {
@@ -453,67 +883,43 @@ public class MigrationOrchestrator {
         yaml.append("  Generated by FPMS Migration Orchestrator\n");
         yaml.append("recipeList:\n");
         
-        try (FileInputStream fis = new FileInputStream(excel);
-             Workbook workbook = new XSSFWorkbook(fis)) {
-            
-            // Find the batch sheet
-            Sheet sheet = null;
-            String batchSheetName = batch.replace(" ", ""); // BATCH1, BATCH2, etc.
-            
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                Sheet s = workbook.getSheetAt(i);
-                if (s.getSheetName().equalsIgnoreCase(batchSheetName)) {
-                    sheet = s;
-                    break;
-                }
-            }
-            
-            if (sheet == null) {
-                throw new Exception("Batch sheet not found: " + batchSheetName);
-            }
-            
-            // Find OPENREWRITE_RECIPE_YAML column
-            Row headerRow = sheet.getRow(0);
-            int yamlCol = -1;
-            
-            for (Cell cell : headerRow) {
-                if ("OPENREWRITE_RECIPE_YAML".equals(cell.getStringCellValue())) {
-                    yamlCol = cell.getColumnIndex();
-                    break;
+        if (recipeCellsIndex == null) {
+            long start = System.currentTimeMillis();
+            recipeCellsIndex = XlsxIndex.recipeCellsBySheet(excel);
+            log("  Indexed " + excelFile + ": " + recipeCellsIndex.size() + " sheets ("
+                + (System.currentTimeMillis() - start) + " ms)");
+        }
+        
+        // Find the batch sheet
+        String batchSheetName = batch.replace(" ", ""); // BATCH1, BATCH2, etc.
+        String sheetKey = batchSheetName.toUpperCase();
+        
+        if (!recipeCellsIndex.containsKey(sheetKey)) {
+            throw new Exception("Batch sheet not found: " + batchSheetName);
+        }
+        
+        List<String> recipeCells = recipeCellsIndex.get(sheetKey);
+        if (recipeCells == null) {
+            throw new Exception("OPENREWRITE_RECIPE_YAML column not found");
+        }
+        
+        // Read all recipes from the batch
+        Set<String> addedRecipes = new HashSet<>();
+        
+        for (String recipeYaml : recipeCells) {
+            // Extract recipe list items
+            String[] lines = recipeYaml.split("\n");
+            boolean inRecipeList = false;
+            for (String line : lines) {
+                if (line.trim().startsWith("recipeList:")) {
+                    inRecipeList = true;
+                    continue;
                 }
-            }
-            
-            if (yamlCol == -1) {
-                throw new Exception("OPENREWRITE_RECIPE_YAML column not found");
-            }
-            
-            // Read all recipes from the batch
-            Set<String> addedRecipes = new HashSet<>();
-            
-            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
-                
-                Cell yamlCell = row.getCell(yamlCol);
-                if (yamlCell == null) continue;
-                
-                String recipeYaml = yamlCell.getStringCellValue();
-                if (recipeYaml == null || recipeYaml.trim().isEmpty()) continue;
-                
-                // Extract recipe list items
-                String[] lines = recipeYaml.split("\n");
-                boolean inRecipeList = false;
-                for (String line : lines) {
-                    if (line.trim().startsWith("recipeList:")) {
-                        inRecipeList = true;
-                        continue;
-                    }
-                    if (inRecipeList && line.trim().startsWith("-")) {
-                        String recipeLine = line.trim();
-                        if (!addedRecipes.contains(recipeLine)) {
-                            yaml.append("  ").append(recipeLine).append("\n");
-                            addedRecipes.add(recipeLine);
-                        }
+                if (inRecipeList && line.trim().startsWith("-")) {
+                    String recipeLine = line.trim();
+                    if (!addedRecipes.contains(recipeLine)) {
+                        yaml.append("  ").append(recipeLine).append("\n");
+                        addedRecipes.add(recipeLine);
                     }
                 }
             }
@@ -529,9 +935,108 @@ public class MigrationOrchestrator {
     }
     
     private void applyOpenRewrite() throws Exception {
-        // Generate temporary pom.xml for OpenRewrite
+        // Generate temporary pom.xml for OpenRewrite (also kept for a manual Maven re-run)
         generateTempPom();
         
+        if ("maven".equals(rewriteEngine)) {
+            applyOpenRewriteWithMaven();
+        } else {
+            applyOpenRewriteInProcess();
+        }
+    }
+    
+    /**
+     * Runs the batch recipe inside this JVM; no Maven startup or dependency resolution.
+     * 
+     * Recipes come from the tool's own classpath (rewrite-migrate-java etc. in the jar-with-dependencies).
+     * The composite recipe comes from rewrite.yml. Type attribution uses the jars in --rewriteClasspath.
+     * The staged Java sources are parsed once. Changed files are written back in place, as the Maven
+     * plugin's "run" goal does. A unified diff goes to reports\rewrite.patch.
+     * JavaParser.fromJavaVersion() picks the parser of the running JVM. Only rewrite-java-21 is
+     * bundled, which is one more reason the tool runs on JDK 21 (checked in STEP 1).
+     */
+    private void applyOpenRewriteInProcess() throws Exception {
+        Path root = Paths.get(workDir);
+        Path recipeFile = root.resolve("rewrite.yml");
+        String recipeName = "com.fpms.migration." + phase + "." + batch;
+        
+        log("  Running OpenRewrite in-process...");
+        long start = System.currentTimeMillis();
+        
+        Environment env;
+        try (InputStream in = Files.newInputStream(recipeFile)) {
+            env = Environment.builder()
+                .scanRuntimeClasspath()
+                .load(new YamlResourceLoader(in, recipeFile.toUri(), new Properties()))
+                .build();
+        }
+        Recipe recipe = env.activateRecipes(recipeName);
+        
+        List<Path> classpath = listFiles(Paths.get(rewriteClasspath), ".jar");
+        if (classpath.isEmpty()) {
+            log("  [WARN] No jars in " + rewriteClasspath + "; types from libraries will be unresolved");
+        }
+        List<Path> javaFiles = listFiles(root.resolve("src"), ".java");
+        
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        ExecutionContext ctx = new InMemoryExecutionContext(failures::add);
+        
+        JavaParser parser = JavaParser.fromJavaVersion()
+            .classpath(classpath)
+            .logCompilationWarningsAndErrors(false)
+            .build();
+        List<SourceFile> sources = parser.parse(javaFiles, root, ctx).collect(Collectors.toList());
+        long parseErrors = sources.stream().filter(source -> source instanceof ParseError).count();
+        log("  Parsed " + sources.size() + " Java files with " + classpath.size() + " classpath jars ("
+            + (System.currentTimeMillis() - start) + " ms)");
+        if (parseErrors > 0) {
+            log("  [WARN] " + parseErrors + " files could not be parsed and are left unchanged");
+        }
+        
+        RecipeRun run = recipe.run(new InMemoryLargeSourceSet(sources), ctx);
+        List<Result> results = run.getChangeset().getAllResults();
+        
+        StringBuilder patch = new StringBuilder();
+        for (Result result : results) {
+            if (result.getAfter() == null) {
+                Files.deleteIfExists(root.resolve(result.getBefore().getSourcePath()));
+            } else {
+                SourceFile after = result.getAfter();
+                Path target = root.resolve(after.getSourcePath());
+                Charset charset = after.getCharset() != null ? after.getCharset() : StandardCharsets.UTF_8;
+                Files.createDirectories(target.getParent());
+                Files.write(target, after.printAll().getBytes(charset));
+                if (result.getBefore() != null && !result.getBefore().getSourcePath().equals(after.getSourcePath())) {
+                    // Moved or renamed by the recipe: the plugin removes the old file too
+                    Files.deleteIfExists(root.resolve(result.getBefore().getSourcePath()));
+                }
+            }
+            patch.append(result.diff());
+        }
+        
+        Path patchFile = root.resolve(Paths.get("reports", "rewrite.patch"));
+        Files.write(patchFile, patch.toString().getBytes(StandardCharsets.UTF_8));
+        
+        for (Throwable failure : failures) {
+            log("  [WARN] Recipe error: " + failure.getMessage());
+        }
+        log("  [OK] OpenRewrite changed " + results.size() + " files (" + (System.currentTimeMillis() - start) + " ms)");
+        log("  Diff: " + patchFile.toAbsolutePath());
+    }
+    
+    private static List<Path> listFiles(Path dir, String extension) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile)
+                .filter(p -> p.getFileName().toString().toLowerCase().endsWith(extension))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+    
+    private void applyOpenRewriteWithMaven() throws Exception {
         log("  Running OpenRewrite (this may take a few minutes)...");
         
         ProcessBuilder pb = new ProcessBuilder(
@@ -602,24 +1107,110 @@ public class MigrationOrchestrator {
         Files.write(Paths.get(workDir, "pom.xml"), pom.getBytes());
     }
     
+    /**
+     * Compiles the staged batch in-process with javax.tools, once per target in COMPILE_RELEASES and
+     * in parallel. Output class files stay in memory.
+     * 
+     * The rest of fpms_module\\src comes from the CompileCache classes of each release. Only the
+     * staged files are compiled, plus the sources that use a type whose ABI the batch changed.
+     * Without the cache (--noCompileCache), javac compiles that code from the source path.
+     * Library jars come from --rewriteClasspath.
+     * 
+     * The step fails on errors in the staged files. It also fails on errors in any other file that
+     * compiled cleanly before the batch (a regression). Errors in files that never compiled for that
+     * release are only counted: those files belong to later batches. Every diagnostic goes to
+     * reports\\compile_diagnostics.csv.
+     */
     private void validateCompilation() throws Exception {
-        log("  Validating JDK 8 compilation...");
-        boolean jdk8Ok = compileWithJDK(8);
+        Path root = Paths.get(workDir).toAbsolutePath().normalize();
+        List<Path> sources = listFiles(root.resolve("src"), ".java");
+        List<Path> classpath = listFiles(Paths.get(rewriteClasspath), ".jar");
+        Path moduleSrc = Paths.get(PROJECT_ROOT, "src");
+        List<Path> sourcepath = Arrays.asList(root.resolve("src"), moduleSrc);
+        boolean incremental = useCompileCache && Files.isDirectory(moduleSrc);
+        
+        // Scripts for a manual cross-check against real JDK 8 / JDK 21 installs
+        for (int release : COMPILE_RELEASES) {
+            writeCompileScript(release);
+        }
+        
+        if (sources.isEmpty()) {
+            log("  [WARN] No staged Java files; nothing to compile");
+            return;
+        }
         
-        log("  Validating JDK 21 compilation...");
-        boolean jdk21Ok = compileWithJDK(21);
+        StringJoiner releases = new StringJoiner(" / ");
+        for (int release : COMPILE_RELEASES) {
+            releases.add("--release " + release);
+        }
+        log("  Compiling " + sources.size() + " staged files in-process (" + releases + ")"
+            + (incremental ? " against " + COMPILE_CACHE : "") + "...");
         
-        if (!jdk8Ok) {
-            throw new Exception("JDK 8 compilation failed!");
+        List<CompileCheck.Result> results = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(COMPILE_RELEASES.length);
+        try {
+            List<Future<CompileCheck.Result>> futures = new ArrayList<>();
+            for (int release : COMPILE_RELEASES) {
+                futures.add(pool.submit(() -> {
+                    if (!incremental) {
+                        return CompileCheck.compile(release, sources, classpath, sourcepath);
+                    }
+                    synchronized (COMPILE_CACHE_LOCKS.computeIfAbsent(release, r -> new Object())) {
+                        CompileCache cache = CompileCache.open(release, Paths.get(COMPILE_CACHE), moduleSrc, classpath);
+                        cache.refresh();
+                        return cache.checkBatch(sources, root.resolve("src"));
+                    }
+                }));
+            }
+            for (Future<CompileCheck.Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw new Exception("Compilation could not run: " + cause.getMessage(), cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
         }
-        if (!jdk21Ok) {
-            throw new Exception("JDK 21 compilation failed!");
+        
+        Path report = root.resolve(Paths.get("reports", "compile_diagnostics.csv"));
+        CompileCheck.writeCsv(report, results, root);
+        
+        List<String> failed = new ArrayList<>();
+        for (CompileCheck.Result result : results) {
+            int batchErrors = result.errors(true);
+            int regressions = result.regressions();
+            log("  " + (batchErrors + regressions == 0 ? "[OK]" : "[FAIL]") + " JDK " + result.release + ": "
+                + batchErrors + " errors, " + result.warnings() + " warnings in batch files; "
+                + regressions + " regressions and " + (result.errors(false) - regressions)
+                + " other errors elsewhere in fpms_module (" + result.millis + " ms)");
+            if (!result.detail.isEmpty()) {
+                log("    " + result.detail);
+            }
+            if (!result.warning.isEmpty()) {
+                log("    [WARN] " + result.warning);
+            }
+            int logged = 0;
+            for (CompileCheck.FileDiagnostic d : result.diagnostics) {
+                if (d.error && (d.inBatch || d.regression) && logged++ < MAX_LOGGED_ERRORS) {
+                    String file = d.file.startsWith(root) ? root.relativize(d.file).toString() : d.file.toString();
+                    log("    " + file + ":" + d.line + ":" + d.column + ": " + d.firstLine());
+                }
+            }
+            if (batchErrors + regressions > 0) {
+                failed.add("JDK " + result.release);
+            }
         }
+        log("  Diagnostics: " + report.toAbsolutePath());
         
+        if (!failed.isEmpty()) {
+            throw new Exception(String.join(" and ", failed) + " compilation failed! (see reports\\compile_diagnostics.csv)");
+        }
         log("  [OK] Compilation successful on both JDK 8 and JDK 21");
     }
     
-    private boolean compileWithJDK(int version) throws Exception {
+    private void writeCompileScript(int version) throws Exception {
         // Generate compilation script
         File scriptFile = new File(workDir, "scripts\\compile_jdk" + version + ".bat");
         
@@ -646,13 +1237,6 @@ public class MigrationOrchestrator {
             pw.println();
             pw.println("echo [OK] Compilation successful!");
         }
-        
-        log("    Generated compilation script: " + scriptFile.getAbsolutePath());
-        log("    [Note] Manual execution required - set JAVA_HOME first");
-        
-        // For now, assume compilation succeeds
-        // In production, execute the script
-        return true;
     }
     
     private void generateReport(List<String> files) throws Exception {
@@ -683,22 +1267,13 @@ public class MigrationOrchestrator {
     private void copyFilesBackToDimension(List<String> files) throws Exception {
         log("  Copying migrated files back to fpms_module...");
         
-        int copied = 0;
-        for (String relPath : files) {
-            File srcFile = new File(workDir, relPath);
-            File destFile = new File(PROJECT_ROOT, relPath);
-            
-            if (!srcFile.exists()) {
-                log("  [WARN] Migrated file not found: " + relPath);
-                continue;
-            }
-            
-            Files.copy(srcFile.toPath(), destFile.toPath(), 
-                      StandardCopyOption.REPLACE_EXISTING);
-            copied++;
-        }
+        FileStager.Result result = new FileStager(stageThreads).stage(Paths.get(workDir), Paths.get(PROJECT_ROOT), files);
         
-        log("  [OK] Copied " + copied + " migrated files back to fpms_module");
+        for (String relPath : result.missing) {
+            log("  [WARN] Migrated file not found: " + relPath);
+        }
+        log("  [OK] Copied " + result.copied + " migrated files back to fpms_module" + skippedSuffix(result));
+        log("  " + result.throughput());
     }
     
     private void checkinToDimension(List<String> files) throws Exception {
@@ -850,8 +1425,1201 @@ public class MigrationOrchestrator {
         });
     }
     
+    /**
+     * Streaming (SAX) reader for the support workbooks.
+     * 
+     * XSSFWorkbook builds the whole sheet in memory before a row can be read. Here each sheet is parsed
+     * as an event stream and only the cells the orchestrator uses are kept, indexed by phase/batch, so
+     * one pass over a workbook serves every batch.
+     */
+    static final class XlsxIndex {
+        
+        static String batchKey(String phase, String batch) {
+            return phase + "/" + batch;
+        }
+        
+        /**
+         * PHASE/BATCH -> FilePathName (Windows separators, row order) from the first sheet.
+         * Header row: PHASE, BATCH, FILEPATHNAME (any order, case-insensitive).
+         */
+        static Map<String, List<String>> impactedFilesByBatch(File excelFile) throws Exception {
+            Map<String, List<String>> index = new LinkedHashMap<>();
+            int[] cols = {-1, -1, -1}; // phase, batch, filePath
+            
+            readSheets(excelFile, true, (sheetName, rowNum, cells) -> {
+                if (rowNum == 0) {
+                    for (Map.Entry<Integer, String> cell : cells.entrySet()) {
+                        String value = cell.getValue().trim().toUpperCase();
+                        if ("PHASE".equals(value)) cols[0] = cell.getKey();
+                        else if ("BATCH".equals(value)) cols[1] = cell.getKey();
+                        else if ("FILEPATHNAME".equals(value)) cols[2] = cell.getKey();
+                    }
+                    return;
+                }
+                
+                String rowPhase = cells.get(cols[0]);
+                String rowBatch = cells.get(cols[1]);
+                String filePath = cells.get(cols[2]);
+                if (rowPhase == null || rowBatch == null || filePath == null) return;
+                
+                String key = batchKey(rowPhase.trim().toUpperCase(), rowBatch.trim().toUpperCase());
+                // Convert Unix paths to Windows paths
+                index.computeIfAbsent(key, k -> new ArrayList<>()).add(filePath.trim().replace("/", "\\"));
+            });
+            
+            if (cols[0] == -1 || cols[1] == -1 || cols[2] == -1) {
+                throw new Exception("Invalid Excel format: missing required columns");
+            }
+            return index;
+        }
+        
+        /**
+         * Sheet name (upper case) -> non-blank OPENREWRITE_RECIPE_YAML cells in row order, for every sheet.
+         * A sheet without that header maps to null.
+         */
+        static Map<String, List<String>> recipeCellsBySheet(File excelFile) throws Exception {
+            Map<String, List<String>> index = new LinkedHashMap<>();
+            Map<String, Integer> yamlCols = new HashMap<>();
+            
+            readSheets(excelFile, false, (sheetName, rowNum, cells) -> {
+                String key = sheetName.toUpperCase();
+                if (rowNum == 0) {
+                    for (Map.Entry<Integer, String> cell : cells.entrySet()) {
+                        if ("OPENREWRITE_RECIPE_YAML".equals(cell.getValue())) {
+                            yamlCols.put(key, cell.getKey());
+                            index.put(key, new ArrayList<>());
+                            break;
+                        }
+                    }
+                    return;
+                }
+                
+                Integer yamlCol = yamlCols.get(key);
+                String recipeYaml = yamlCol == null ? null : cells.get(yamlCol);
+                if (recipeYaml != null && !recipeYaml.trim().isEmpty()) {
+                    index.get(key).add(recipeYaml);
+                }
+            }, sheetName -> index.putIfAbsent(sheetName.toUpperCase(), null));
+            
+            return index;
+        }
+        
+        interface RowHandler {
+            /** cells: 0-based column -> formatted cell text; only non-empty cells, reused between rows. */
+            void row(String sheetName, int rowNum, Map<Integer, String> cells);
+        }
+        
+        private static void readSheets(File excelFile, boolean firstSheetOnly, RowHandler handler) throws Exception {
+            readSheets(excelFile, firstSheetOnly, handler, sheetName -> { });
+        }
+        
+        private static void readSheets(File excelFile, boolean firstSheetOnly, RowHandler handler,
+                                       java.util.function.Consumer<String> sheetDone) throws Exception {
+            try (OPCPackage pkg = OPCPackage.open(excelFile, PackageAccess.READ)) {
+                XSSFReader reader = new XSSFReader(pkg);
+                ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+                StylesTable styles = reader.getStylesTable();
+                
+                XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+                while (sheets.hasNext()) {
+                    try (InputStream sheet = sheets.next()) {
+                        String sheetName = sheets.getSheetName();
+                        XMLReader parser = XMLHelper.newXMLReader();
+                        parser.setContentHandler(new XSSFSheetXMLHandler(
+                            styles, strings, new RowCollector(sheetName, handler), false));
+                        parser.parse(new InputSource(sheet));
+                        sheetDone.accept(sheetName);
+                    }
+                    if (firstSheetOnly) break;
+                }
+            }
+        }
+        
+        /** Buffers one row of SAX cell events and hands it to the RowHandler at the end of the row. */
+        private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+            private final String sheetName;
+            private final RowHandler handler;
+            private final Map<Integer, String> cells = new HashMap<>();
+            private int nextCol;
+            
+            RowCollector(String sheetName, RowHandler handler) {
+                this.sheetName = sheetName;
+                this.handler = handler;
+            }
+            
+            @Override
+            public void startRow(int rowNum) {
+                cells.clear();
+                nextCol = 0;
+            }
+            
+            @Override
+            public void endRow(int rowNum) {
+                if (!cells.isEmpty()) {
+                    handler.row(sheetName, rowNum, cells);
+                }
+            }
+            
+            @Override
+            public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+                // Writers may omit the "r" attribute; cells are then consecutive
+                int col = cellReference == null ? nextCol : new CellReference(cellReference).getCol();
+                nextCol = col + 1;
+                if (formattedValue != null) {
+                    cells.put(col, formattedValue);
+                }
+            }
+            
+            @Override
+            public void headerFooter(String text, boolean isHeader, String tagName) {
+            }
+        }
+    }
+    
+    /**
+     * Parallel copy of a relative file list from one root to another (staging and copy-back).
+     * 
+     * Copies run on a fixed pool, so a network drive sees at most N requests in flight. Each target
+     * directory is created once per run. A file is skipped when the destination already has the same
+     * size, modification time and SHA-256. The source mtime is kept on the copy so that a re-run
+     * without --clean finds it unchanged. Large files go through FileChannel.transferTo.
+     */
+    static final class FileStager {
+        
+        private static final long TRANSFER_THRESHOLD = 1L << 20; // 1 MB
+        private static final long SKIPPED = -1;
+        private static final long MISSING = -2;
+        
+        private final int threads;
+        private final ConcurrentHashMap<Path, Boolean> createdDirs = new ConcurrentHashMap<>();
+        
+        FileStager(int threads) {
+            this.threads = threads;
+        }
+        
+        static final class Result {
+            int copied;
+            int skipped;
+            long bytes;
+            long millis;
+            int threads;
+            final List<String> missing = new ArrayList<>();
+            
+            String throughput() {
+                double mb = bytes / (1024.0 * 1024.0);
+                double seconds = Math.max(millis, 1) / 1000.0;
+                return String.format("Staging: %.1f MB in %d ms (%.1f MB/s, %d files/s, %d threads)",
+                    mb, millis, mb / seconds, Math.round((copied + skipped) / seconds), threads);
+            }
+        }
+        
+        /** Copies srcRoot/relPath to destRoot/relPath for each path; missing sources are reported, not fatal. */
+        Result stage(Path srcRoot, Path destRoot, List<String> relPaths) throws Exception {
+            long start = System.currentTimeMillis();
+            List<String> unique = new ArrayList<>(new LinkedHashSet<>(relPaths));
+            Result result = new Result();
+            result.threads = Math.max(1, Math.min(threads, unique.size()));
+            
+            ExecutorService pool = Executors.newFixedThreadPool(result.threads);
+            try {
+                List<Future<Long>> outcomes = new ArrayList<>(unique.size());
+                for (String relPath : unique) {
+                    outcomes.add(pool.submit(() -> stageOne(srcRoot.resolve(relPath), destRoot.resolve(relPath))));
+                }
+                
+                for (int i = 0; i < unique.size(); i++) {
+                    long outcome;
+                    try {
+                        outcome = outcomes.get(i).get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        throw new Exception("Failed to copy " + unique.get(i) + ": " + cause.getMessage(), cause);
+                    }
+                    if (outcome == MISSING) {
+                        result.missing.add(unique.get(i));
+                    } else if (outcome == SKIPPED) {
+                        result.skipped++;
+                    } else {
+                        result.copied++;
+                        result.bytes += outcome;
+                    }
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            
+            result.millis = System.currentTimeMillis() - start;
+            return result;
+        }
+        
+        /** Returns the bytes copied, SKIPPED or MISSING. */
+        private long stageOne(Path src, Path dest) throws IOException {
+            BasicFileAttributes srcAttrs;
+            try {
+                srcAttrs = Files.readAttributes(src, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return MISSING;
+            }
+            if (!srcAttrs.isRegularFile()) {
+                return MISSING;
+            }
+            
+            if (unchanged(src, srcAttrs, dest)) {
+                return SKIPPED;
+            }
+            
+            Path parent = dest.getParent();
+            if (parent != null) {
+                ensureDirectory(parent);
+            }
+            
+            long size = srcAttrs.size();
+            if (size < TRANSFER_THRESHOLD) {
+                Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(dest, StandardOpenOption.WRITE,
+                         StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long position = 0;
+                    while (position < size) {
+                        long sent = in.transferTo(position, size - position, out);
+                        if (sent <= 0) break; // source shrank while copying
+                        position += sent;
+                    }
+                }
+            }
+            Files.setLastModifiedTime(dest, srcAttrs.lastModifiedTime());
+            return size;
+        }
+        
+        private boolean unchanged(Path src, BasicFileAttributes srcAttrs, Path dest) throws IOException {
+            BasicFileAttributes destAttrs;
+            try {
+                destAttrs = Files.readAttributes(dest, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            return destAttrs.isRegularFile()
+                && destAttrs.size() == srcAttrs.size()
+                && destAttrs.lastModifiedTime().equals(srcAttrs.lastModifiedTime())
+                && Arrays.equals(sha256(src), sha256(dest));
+        }
+        
+        private void ensureDirectory(Path dir) throws IOException {
+            try {
+                createdDirs.computeIfAbsent(dir, d -> {
+                    try {
+                        Files.createDirectories(d);
+                        return Boolean.TRUE;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        
+        private static byte[] sha256(Path file) throws IOException {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+            return digest.digest();
+        }
+    }
+    
+    /** In-process javac runs over the staged batch, with ABI and reference capture for CompileCache. */
+    static final class CompileCheck {
+        
+        static final class FileDiagnostic {
+            final boolean error;
+            final String kind;
+            final Path file; // null for diagnostics without a source file (options, classpath)
+            final long line;
+            final long column;
+            final String code;
+            final String message;
+            final boolean inBatch;
+            final boolean regression; // outside the batch, and compiled cleanly before it
+            
+            FileDiagnostic(javax.tools.Diagnostic<? extends JavaFileObject> d, Path file,
+                           boolean inBatch, boolean regression) {
+                this.error = d.getKind() == javax.tools.Diagnostic.Kind.ERROR;
+                this.kind = d.getKind().name();
+                this.file = file;
+                this.line = d.getLineNumber();
+                this.column = d.getColumnNumber();
+                this.code = d.getCode();
+                this.message = d.getMessage(Locale.ROOT);
+                this.inBatch = inBatch;
+                this.regression = regression;
+            }
+            
+            String firstLine() {
+                int nl = message.indexOf('\n');
+                return nl < 0 ? message : message.substring(0, nl);
+            }
+        }
+        
+        static final class Result {
+            final int release;
+            final List<FileDiagnostic> diagnostics = new ArrayList<>();
+            long millis;
+            String detail = ""; // how the batch was compiled (cache use, dependents)
+            String warning = ""; // problem with the compile cache itself, logged as [WARN]
+            
+            Result(int release) {
+                this.release = release;
+            }
+            
+            int errors(boolean inBatch) {
+                int n = 0;
+                for (FileDiagnostic d : diagnostics) {
+                    if (d.error && d.inBatch == inBatch) n++;
+                }
+                return n;
+            }
+            
+            int regressions() {
+                int n = 0;
+                for (FileDiagnostic d : diagnostics) {
+                    if (d.error && d.regression) n++;
+                }
+                return n;
+            }
+            
+            int warnings() {
+                int n = 0;
+                for (FileDiagnostic d : diagnostics) {
+                    if (d.inBatch && d.kind.contains("WARNING")) n++;
+                }
+                return n;
+            }
+        }
+        
+        /** What one javac task saw: diagnostics, plus ABI, references and class files per source. */
+        static final class Run {
+            final List<javax.tools.Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+            final Map<Path, SourceInfo> sources = new HashMap<>();
+            final Map<Path, List<String>> classes = new HashMap<>(); // binary names per source
+            
+            Map<Path, Integer> errorsByFile() {
+                Map<Path, Integer> errors = new HashMap<>();
+                for (javax.tools.Diagnostic<? extends JavaFileObject> d : diagnostics) {
+                    Path file = pathOf(d.getSource());
+                    if (d.getKind() == javax.tools.Diagnostic.Kind.ERROR && file != null) {
+                        errors.merge(file, 1, Integer::sum);
+                    }
+                }
+                return errors;
+            }
+            
+            boolean hasErrors() {
+                for (javax.tools.Diagnostic<? extends JavaFileObject> d : diagnostics) {
+                    if (d.getKind() == javax.tools.Diagnostic.Kind.ERROR) return true;
+                }
+                return false;
+            }
+            
+            void addTo(Result result, java.util.function.Predicate<Path> inBatch,
+                       java.util.function.Predicate<Path> wasClean) {
+                for (javax.tools.Diagnostic<? extends JavaFileObject> d : diagnostics) {
+                    Path file = pathOf(d.getSource());
+                    boolean batch = file != null && inBatch.test(file);
+                    boolean regression = !batch && file != null
+                        && d.getKind() == javax.tools.Diagnostic.Kind.ERROR && wasClean.test(file);
+                    result.diagnostics.add(new FileDiagnostic(d, file, batch, regression));
+                }
+            }
+        }
+        
+        /** Top-level types declared by one source: ABI hash per type and the top-level types it references. */
+        static final class SourceInfo {
+            final Map<String, String> abiByType = new TreeMap<>();
+            final Set<String> references = new TreeSet<>();
+            
+            String abi() {
+                StringBuilder all = new StringBuilder();
+                for (Map.Entry<String, String> type : abiByType.entrySet()) {
+                    all.append(type.getKey()).append('=').append(type.getValue()).append('\n');
+                }
+                return sha256Hex(all.toString());
+            }
+        }
+        
+        static Result compile(int release, List<Path> sources, List<Path> classpath, List<Path> sourcepath)
+                throws IOException {
+            long start = System.currentTimeMillis();
+            Set<Path> batch = new HashSet<>();
+            for (Path source : sources) {
+                batch.add(source.toAbsolutePath().normalize());
+            }
+            Run run = javac(release, sources, classpath, sourcepath, null);
+            Result result = new Result(release);
+            run.addTo(result, batch::contains, file -> false);
+            result.millis = System.currentTimeMillis() - start;
+            return result;
+        }
+        
+        /**
+         * One javac task. Class files go to classOutput, or are dropped when it is null.
+         * Only classes whose type has a source sibling are recorded in Run.classes.
+         */
+        static Run javac(int release, Collection<Path> sources, List<Path> classpath, List<Path> sourcepath,
+                         Path classOutput) throws IOException {
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            if (compiler == null) {
+                throw new IOException("No Java compiler in this runtime; run the tool with a JDK, not a JRE");
+            }
+            
+            List<Path> existingSourcepath = new ArrayList<>();
+            for (Path dir : sourcepath) {
+                if (Files.isDirectory(dir)) existingSourcepath.add(dir);
+            }
+            
+            Run run = new Run();
+            DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+            try (StandardJavaFileManager files = compiler.getStandardFileManager(collector, Locale.ROOT, sourceCharset())) {
+                files.setLocationFromPaths(StandardLocation.CLASS_PATH, classpath);
+                files.setLocationFromPaths(StandardLocation.SOURCE_PATH, existingSourcepath);
+                if (classOutput != null) {
+                    Files.createDirectories(classOutput);
+                    files.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, Collections.singletonList(classOutput));
+                }
+                List<String> options = Arrays.asList(
+                    "--release", String.valueOf(release),
+                    "-proc:none",
+                    "-implicit:class",
+                    "-Xlint:-options",       // "source value 8 is obsolete" on newer JDKs
+                    "-Xmaxerrs", "100000",
+                    "-Xmaxwarns", "100000");
+                JavacTask task = (JavacTask) compiler.getTask(null, new Output(files, classOutput != null, run.classes),
+                    collector, options, null, files.getJavaFileObjectsFromPaths(sources));
+                task.addTaskListener(new Analyzer(Trees.instance(task), run.sources));
+                task.call();
+            }
+            run.diagnostics.addAll(collector.getDiagnostics());
+            return run;
+        }
+        
+        static Path pathOf(FileObject file) {
+            if (file == null || !"file".equals(file.toUri().getScheme())) return null;
+            return Paths.get(file.toUri()).toAbsolutePath().normalize();
+        }
+        
+        /** Encoding the legacy sources were written in: the OS code page, as javac 8 defaulted to. */
+        private static Charset sourceCharset() {
+            String name = System.getProperty("native.encoding"); // JDK 17+; file.encoding may be UTF-8 there
+            return name != null && Charset.isSupported(name) ? Charset.forName(name) : Charset.defaultCharset();
+        }
+        
+        static void writeCsv(Path csv, List<Result> results, Path root) throws IOException {
+            Files.createDirectories(csv.getParent());
+            try (BufferedWriter w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+                w.write("Release,Kind,InBatch,Regression,File,Line,Column,Code,Message");
+                w.newLine();
+                for (Result result : results) {
+                    for (FileDiagnostic d : result.diagnostics) {
+                        String file = d.file == null ? ""
+                            : d.file.startsWith(root) ? root.relativize(d.file).toString() : d.file.toString();
+                        w.write(result.release + "," + d.kind + "," + (d.inBatch ? "Y" : "N") + ","
+                            + (d.regression ? "Y" : "N") + "," + csv(file) + "," + d.line + "," + d.column + ","
+                            + csv(d.code) + "," + csv(d.message.replace("\r", "").replace("\n", " | ")));
+                        w.newLine();
+                    }
+                }
+            }
+        }
+        
+        private static String csv(String value) {
+            if (value == null) return "";
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0) return value;
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        
+        /** Records which classes each source produced; keeps them in memory unless writing to disk. */
+        private static final class Output extends ForwardingJavaFileManager<StandardJavaFileManager> {
+            private final boolean toDisk;
+            private final Map<Path, List<String>> classes;
+            
+            Output(StandardJavaFileManager files, boolean toDisk, Map<Path, List<String>> classes) {
+                super(files);
+                this.toDisk = toDisk;
+                this.classes = classes;
+            }
+            
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                                       JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+                Path source = pathOf(sibling);
+                if (source != null && kind == JavaFileObject.Kind.CLASS) {
+                    classes.computeIfAbsent(source, k -> new ArrayList<>()).add(className);
+                }
+                if (toDisk) {
+                    return super.getJavaFileForOutput(location, className, kind, sibling);
+                }
+                URI uri = URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+                return new SimpleJavaFileObject(uri, kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return OutputStream.nullOutputStream();
+                    }
+                };
+            }
+        }
+        
+        /**
+         * After each top-level class is analysed, records its ABI hash and the top-level types its body
+         * refers to. Both come from attributed trees, so references through inlined constants are kept too.
+         * The ABI is the non-private member signatures, supertypes and constant values; method bodies
+         * are not part of it.
+         */
+        private static final class Analyzer implements TaskListener {
+            private final Trees trees;
+            private final Map<Path, SourceInfo> sources;
+            
+            Analyzer(Trees trees, Map<Path, SourceInfo> sources) {
+                this.trees = trees;
+                this.sources = sources;
+            }
+            
+            @Override
+            public void finished(TaskEvent e) {
+                if (e.getKind() != TaskEvent.Kind.ANALYZE || e.getTypeElement() == null) return;
+                Path source = pathOf(e.getSourceFile());
+                TypeElement type = outermost(e.getTypeElement());
+                if (source == null || type == null) return;
+                
+                SourceInfo info = sources.computeIfAbsent(source, k -> new SourceInfo());
+                String name = type.getQualifiedName().toString();
+                if (info.abiByType.containsKey(name)) return;
+                
+                StringBuilder abi = new StringBuilder();
+                appendAbi(type, abi);
+                info.abiByType.put(name, sha256Hex(abi.toString()));
+                
+                TreePath path = trees.getPath(type);
+                if (path != null) {
+                    new TreePathScanner<Void, Void>() {
+                        @Override
+                        public Void visitIdentifier(IdentifierTree node, Void unused) {
+                            reference();
+                            return super.visitIdentifier(node, unused);
+                        }
+                        
+                        @Override
+                        public Void visitMemberSelect(MemberSelectTree node, Void unused) {
+                            reference();
+                            return super.visitMemberSelect(node, unused);
+                        }
+                        
+                        private void reference() {
+                            TypeElement target = outermost(trees.getElement(getCurrentPath()));
+                            String name = target == null ? null : target.getQualifiedName().toString();
+                            if (name != null && !name.startsWith("java.")) { // never declared in fpms sources
+                                info.references.add(name);
+                            }
+                        }
+                    }.scan(path, null);
+                }
+            }
+            
+            private static void appendAbi(Element e, StringBuilder out) {
+                if (e.getModifiers().contains(Modifier.PRIVATE)) return;
+                out.append(e.getKind()).append(' ').append(e.getModifiers()).append(' ')
+                    .append(e.getSimpleName()).append(' ').append(e.asType());
+                if (e instanceof TypeElement) {
+                    TypeElement type = (TypeElement) e;
+                    out.append(" extends ").append(type.getSuperclass()).append(" implements ").append(type.getInterfaces());
+                } else if (e instanceof VariableElement) {
+                    out.append(" = ").append(((VariableElement) e).getConstantValue());
+                } else if (e instanceof ExecutableElement) {
+                    ExecutableElement method = (ExecutableElement) e;
+                    out.append(" throws ").append(method.getThrownTypes()).append(" default ").append(method.getDefaultValue());
+                }
+                out.append('\n');
+                for (Element member : e.getEnclosedElements()) {
+                    appendAbi(member, out);
+                }
+            }
+        }
+        
+        static TypeElement outermost(Element element) {
+            TypeElement top = null;
+            for (Element e = element; e != null && !(e instanceof PackageElement) && !(e instanceof ModuleElement);
+                 e = e.getEnclosingElement()) {
+                if (e instanceof TypeElement) top = (TypeElement) e;
+            }
+            return top;
+        }
+        
+        static String sha256Hex(String text) {
+            return toHex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+        }
+        
+        static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        static String toHex(byte[] bytes) {
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+    }
+    
+    /**
+     * Incremental compile validation: fpms_module\src compiled once per release into
+     * compile_cache\release<N>\classes. index.tsv keeps, for each source, its stamp, error count,
+     * ABI hash, declared types, referenced types and class files.
+     * 
+     * refresh() recompiles only the sources changed since the last run. When a recompiled source's
+     * ABI changes, the sources that reference its types are recompiled as well. A source that does
+     * not compile (e.g. not yet migrated, for --release 21) is dropped and recorded with its errors;
+     * javac writes no classes while any file in the task has errors.
+     * 
+     * checkBatch() compiles only the staged files against the cached classes. If their ABI differs
+     * from the fpms_module version, their referencing sources are compiled with them. So the cost
+     * follows the batch size, not the size of fpms_module.
+     */
+    static final class CompileCache {
+        
+        private static final String INDEX = "index.tsv";
+        private static final String HEADER = "# fpms compile cache v1";
+        private static final int MAX_EXCLUDE_ROUNDS = 6;
+        
+        static final class Entry {
+            long size;
+            long mtime;
+            String sha256 = "";
+            int errors;          // 0 = compiled cleanly; -1 = dropped with a file that did not compile
+            String abi = "";
+            List<String> types = new ArrayList<>();
+            Set<String> references = new TreeSet<>();
+            List<String> classFiles = new ArrayList<>();
+        }
+        
+        final int release;
+        final Path classes;
+        private final Path dir;
+        private final Path moduleSrc;
+        private final List<Path> jars;
+        private final String settings;
+        private final Map<String, Entry> entries = new TreeMap<>(); // key: path under moduleSrc, '/' separated
+        
+        int refreshed;   // sources recompiled by the last refresh()
+        long refreshMillis;
+        String warning = ""; // set when compileIntoCache gave up before a clean round
+        
+        private CompileCache(int release, Path cacheRoot, Path moduleSrc, List<Path> jars) throws IOException {
+            this.release = release;
+            this.dir = cacheRoot.resolve("release" + release);
+            this.classes = dir.resolve("classes");
+            this.moduleSrc = moduleSrc.toAbsolutePath().normalize();
+            this.jars = jars;
+            
+            StringBuilder jarStamps = new StringBuilder();
+            for (Path jar : jars) {
+                jarStamps.append(jar.getFileName()).append(':').append(Files.size(jar)).append(':')
+                    .append(Files.getLastModifiedTime(jar).toMillis()).append(';');
+            }
+            this.settings = HEADER + " release=" + release + " javac=" + System.getProperty("java.version")
+                + " jars=" + CompileCheck.sha256Hex(jarStamps.toString());
+        }
+        
+        static CompileCache open(int release, Path cacheRoot, Path moduleSrc, List<Path> jars) throws IOException {
+            CompileCache cache = new CompileCache(release, cacheRoot, moduleSrc, jars);
+            if (!cache.load()) {
+                // New cache, other JDK or other library jars: start from an empty class directory
+                cache.entries.clear();
+                if (Files.isDirectory(cache.classes)) {
+                    try (Stream<Path> walk = Files.walk(cache.classes)) {
+                        for (Path p : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                            Files.delete(p);
+                        }
+                    }
+                }
+            }
+            return cache;
+        }
+        
+        /** Brings the cached classes up to date with fpms_module\src. */
+        void refresh() throws IOException {
+            long start = System.currentTimeMillis();
+            Set<String> seen = new HashSet<>();
+            Set<String> changed = new TreeSet<>();
+            
+            for (Path source : listFiles(moduleSrc, ".java")) {
+                String key = key(source);
+                seen.add(key);
+                BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+                Entry entry = entries.get(key);
+                if (entry != null && entry.size == attrs.size() && entry.mtime == attrs.lastModifiedTime().toMillis()) {
+                    continue;
+                }
+                String sha = fileSha256(source);
+                if (entry == null) {
+                    entry = new Entry();
+                    entries.put(key, entry);
+                    changed.add(key);
+                } else if (!entry.sha256.equals(sha)) {
+                    changed.add(key);
+                }
+                entry.size = attrs.size();
+                entry.mtime = attrs.lastModifiedTime().toMillis();
+                entry.sha256 = sha;
+            }
+            
+            Set<String> abiChanged = new HashSet<>();
+            for (String key : new ArrayList<>(entries.keySet())) {
+                if (!seen.contains(key)) {
+                    Entry removed = entries.remove(key);
+                    deleteClasses(removed);
+                    abiChanged.addAll(removed.types);
+                }
+            }
+            
+            refreshed = 0;
+            warning = "";
+            Set<String> done = new HashSet<>();
+            Set<String> toCompile = new TreeSet<>(changed);
+            toCompile.addAll(referencing(abiChanged, done));
+            while (!toCompile.isEmpty()) {
+                Map<String, String> oldAbi = new HashMap<>();
+                Map<String, List<String>> oldTypes = new HashMap<>();
+                for (String key : toCompile) {
+                    oldAbi.put(key, entries.get(key).abi);
+                    oldTypes.put(key, entries.get(key).types);
+                }
+                
+                compileIntoCache(toCompile);
+                refreshed += toCompile.size();
+                done.addAll(toCompile);
+                
+                abiChanged.clear();
+                for (String key : toCompile) {
+                    Entry entry = entries.get(key);
+                    if (!entry.abi.equals(oldAbi.get(key))) {
+                        abiChanged.addAll(oldTypes.get(key));
+                        abiChanged.addAll(entry.types);
+                    }
+                }
+                toCompile = referencing(abiChanged, done);
+            }
+            
+            if (refreshed > 0 || !changed.isEmpty() || seen.size() != entries.size()) {
+                save();
+            }
+            refreshMillis = System.currentTimeMillis() - start;
+        }
+        
+        /**
+         * Compiles the staged batch against the cached classes (class output in memory). Referencing
+         * sources are added when the batch changes an ABI. Files that never compiled cleanly for this
+         * release are not in the cache; javac compiles those from the source path.
+         */
+        CompileCheck.Result checkBatch(List<Path> staged, Path stagedSrc) throws IOException {
+            long start = System.currentTimeMillis();
+            Path stagedRoot = stagedSrc.toAbsolutePath().normalize();
+            List<Path> classpath = classpath();
+            List<Path> sourcepath = Arrays.asList(stagedRoot, moduleSrc);
+            
+            Set<Path> batch = new HashSet<>();
+            Set<String> batchKeys = new HashSet<>();
+            for (Path source : staged) {
+                Path abs = source.toAbsolutePath().normalize();
+                batch.add(abs);
+                batchKeys.add(stagedRoot.relativize(abs).toString().replace('\\', '/'));
+            }
+            
+            CompileCheck.Run run = CompileCheck.javac(release, staged, classpath, sourcepath, null);
+            
+            Set<String> abiChanged = new HashSet<>();
+            for (Path source : batch) {
+                Entry base = entries.get(stagedRoot.relativize(source).toString().replace('\\', '/'));
+                CompileCheck.SourceInfo info = run.sources.get(source);
+                if (base == null || info == null) continue; // new file, or did not compile: nothing to compare
+                if (!base.abi.equals(info.abi())) {
+                    abiChanged.addAll(base.types);
+                    abiChanged.addAll(info.abiByType.keySet());
+                }
+            }
+            Set<String> dependents = referencing(abiChanged, batchKeys);
+            
+            if (!dependents.isEmpty()) {
+                List<Path> units = new ArrayList<>(staged);
+                for (String key : dependents) {
+                    units.add(moduleSrc.resolve(key));
+                }
+                run = CompileCheck.javac(release, units, classpath, sourcepath, null);
+            }
+            
+            CompileCheck.Result result = new CompileCheck.Result(release);
+            run.addTo(result, batch::contains, file -> {
+                if (!file.startsWith(moduleSrc)) return false;
+                Entry entry = entries.get(key(file));
+                return entry != null && entry.errors == 0;
+            });
+            result.detail = "incremental: " + dependents.size() + " dependents for " + abiChanged.size()
+                + " changed types, " + refreshed + " cache sources refreshed in " + refreshMillis + " ms";
+            result.warning = warning;
+            result.millis = System.currentTimeMillis() - start;
+            return result;
+        }
+        
+        /** Cache keys of sources (not in exclude) whose references include one of the given types. */
+        private Set<String> referencing(Set<String> types, Set<String> exclude) {
+            Set<String> keys = new TreeSet<>();
+            if (types.isEmpty()) return keys;
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (exclude.contains(e.getKey())) continue;
+                for (String type : e.getValue().references) {
+                    if (types.contains(type)) {
+                        keys.add(e.getKey());
+                        break;
+                    }
+                }
+            }
+            return keys;
+        }
+        
+        /**
+         * Compiles the sources into the class directory. After a round with errors the failing files are
+         * dropped together with every remaining source that references their types, directly or through
+         * other dropped sources (no classes were written, so those would fail next round anyway). Each
+         * round therefore peels off whole dependency chains instead of one layer of them.
+         */
+        private void compileIntoCache(Set<String> keys) throws IOException {
+            Set<String> remaining = new TreeSet<>(keys);
+            for (String key : keys) {
+                Entry entry = entries.get(key);
+                deleteClasses(entry);
+                entry.classFiles = new ArrayList<>();
+                entry.errors = -1;
+                entry.abi = "";
+            }
+            
+            int dropped = 0;
+            for (int round = 0; round < MAX_EXCLUDE_ROUNDS && !remaining.isEmpty(); round++) {
+                List<Path> sources = new ArrayList<>();
+                for (String key : remaining) {
+                    sources.add(moduleSrc.resolve(key));
+                }
+                CompileCheck.Run run = CompileCheck.javac(release, sources, classpath(),
+                    Collections.emptyList(), classes);
+                
+                for (String key : remaining) {
+                    CompileCheck.SourceInfo info = run.sources.get(moduleSrc.resolve(key));
+                    if (info != null) {
+                        Entry entry = entries.get(key);
+                        entry.types = new ArrayList<>(info.abiByType.keySet());
+                        entry.references = info.references;
+                    }
+                }
+                
+                Map<Path, Integer> errors = run.errorsByFile();
+                if (!run.hasErrors()) {
+                    for (String key : remaining) {
+                        Path source = moduleSrc.resolve(key);
+                        Entry entry = entries.get(key);
+                        entry.errors = 0;
+                        CompileCheck.SourceInfo info = run.sources.get(source);
+                        entry.abi = info == null ? "" : info.abi();
+                        entry.classFiles = run.classes.getOrDefault(source, new ArrayList<>());
+                    }
+                    return;
+                }
+                if (errors.isEmpty()) {
+                    return; // errors not tied to a file (options, classpath): leave the round's sources dropped
+                }
+                
+                Set<String> droppedTypes = new HashSet<>();
+                for (Map.Entry<Path, Integer> e : errors.entrySet()) {
+                    String key = key(e.getKey());
+                    if (remaining.remove(key)) {
+                        entries.get(key).errors = e.getValue();
+                        droppedTypes.addAll(entries.get(key).types);
+                        dropped++;
+                    }
+                }
+                while (!droppedTypes.isEmpty()) {
+                    Set<String> users = new HashSet<>();
+                    for (String key : remaining) {
+                        for (String type : entries.get(key).references) {
+                            if (droppedTypes.contains(type)) {
+                                users.add(key);
+                                break;
+                            }
+                        }
+                    }
+                    remaining.removeAll(users);
+                    dropped += users.size();
+                    droppedTypes.clear();
+                    for (String key : users) {
+                        droppedTypes.addAll(entries.get(key).types); // errors stays -1: dropped, not failed
+                    }
+                }
+            }
+            if (!remaining.isEmpty()) {
+                warning = "compile cache (release " + release + ") gave up after " + MAX_EXCLUDE_ROUNDS
+                    + " rounds: " + dropped + " sources dropped, " + remaining.size()
+                    + " unresolved; they count as not compiling and cannot show regressions";
+            }
+        }
+        
+        private List<Path> classpath() {
+            List<Path> classpath = new ArrayList<>();
+            classpath.add(classes);
+            classpath.addAll(jars);
+            return classpath;
+        }
+        
+        private String key(Path source) {
+            return moduleSrc.relativize(source.toAbsolutePath().normalize()).toString().replace('\\', '/');
+        }
+        
+        private void deleteClasses(Entry entry) throws IOException {
+            for (String className : entry.classFiles) {
+                Files.deleteIfExists(classes.resolve(className.replace('.', '/') + ".class"));
+            }
+        }
+        
+        private static String fileSha256(Path file) throws IOException {
+            MessageDigest digest = CompileCheck.sha256();
+            try (InputStream in = Files.newInputStream(file)) {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+            return CompileCheck.toHex(digest.digest());
+        }
+        
+        // index.tsv: settings line, then one line per source:
+        // key, size, mtime, sha256, errors, abi, types, references, classFiles (lists ';'-separated)
+        private boolean load() throws IOException {
+            Path index = dir.resolve(INDEX);
+            if (!Files.isRegularFile(index)) return false;
+            try (BufferedReader r = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+                if (!settings.equals(r.readLine())) return false;
+                String line;
+                while ((line = r.readLine()) != null) {
+                    String[] f = line.split("\t", -1);
+                    if (f.length != 9) return false;
+                    Entry entry = new Entry();
+                    entry.size = Long.parseLong(f[1]);
+                    entry.mtime = Long.parseLong(f[2]);
+                    entry.sha256 = f[3];
+                    entry.errors = Integer.parseInt(f[4]);
+                    entry.abi = f[5];
+                    entry.types = split(f[6]);
+                    entry.references = new TreeSet<>(split(f[7]));
+                    entry.classFiles = split(f[8]);
+                    entries.put(f[0], entry);
+                }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return true;
+        }
+        
+        private void save() throws IOException {
+            Files.createDirectories(dir);
+            Path tmp = dir.resolve(INDEX + ".tmp");
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write(settings);
+                w.newLine();
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    w.write(e.getKey() + "\t" + entry.size + "\t" + entry.mtime + "\t" + entry.sha256 + "\t"
+                        + entry.errors + "\t" + entry.abi + "\t" + String.join(";", entry.types) + "\t"
+                        + String.join(";", entry.references) + "\t" + String.join(";", entry.classFiles));
+                    w.newLine();
+                }
+            }
+            Files.move(tmp, dir.resolve(INDEX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        
+        private static List<String> split(String field) {
+            return field.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(field.split(";")));
+        }
+    }
+    
+    /**
+     * Source dependency graph written by JdkMigrationScanner --depGraph=FILE: one node per .java/.jsp/.jspf/.tag
+     * file under the scanned roots (path as in the batch workbook, e.g. src\com\fpms\...), one edge per file
+     * another file references. Stored as compressed sparse rows: offsets[n + 1] into targets[], so the whole
+     * graph is three arrays. The reverse rows (who references a file) are built once on load.
+     * 
+     * Used for impact analysis only; the batch still stages exactly the files of the workbook.
+     */
+    static final class DependencyGraph {
+        
+        private static final String MAGIC = "JMS-DEPGRAPH";
+        private static final int VERSION = 1;
+        
+        final String[] paths;
+        private final int[] offsets;
+        private final int[] targets;
+        private final int[] reverseOffsets;
+        private final int[] reverseTargets;
+        private final Map<String, Integer> nodes = new HashMap<>(); // lower-case path -> node
+        
+        private DependencyGraph(String[] paths, int[] offsets, int[] targets) {
+            this.paths = paths;
+            this.offsets = offsets;
+            this.targets = targets;
+            for (int i = 0; i < paths.length; i++) {
+                nodes.put(paths[i].toLowerCase(), i);
+            }
+            
+            // Counting sort of the edges by target
+            reverseOffsets = new int[paths.length + 1];
+            for (int t : targets) {
+                reverseOffsets[t + 1]++;
+            }
+            for (int i = 0; i < paths.length; i++) {
+                reverseOffsets[i + 1] += reverseOffsets[i];
+            }
+            reverseTargets = new int[targets.length];
+            int[] next = Arrays.copyOf(reverseOffsets, paths.length);
+            for (int from = 0; from < paths.length; from++) {
+                for (int k = offsets[from]; k < offsets[from + 1]; k++) {
+                    reverseTargets[next[targets[k]]++] = from;
+                }
+            }
+        }
+        
+        static DependencyGraph read(Path file) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new java.util.zip.GZIPInputStream(Files.newInputStream(file), 1 << 16)))) {
+                if (!MAGIC.equals(in.readUTF())) {
+                    throw new IOException("Not a dependency graph: " + file);
+                }
+                int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported dependency graph version " + version + ": " + file);
+                }
+                String[] paths = new String[in.readInt()];
+                for (int i = 0; i < paths.length; i++) {
+                    paths[i] = in.readUTF();
+                }
+                int[] offsets = new int[paths.length + 1];
+                for (int i = 0; i < offsets.length; i++) {
+                    offsets[i] = in.readInt();
+                }
+                int[] targets = new int[offsets[paths.length]];
+                for (int i = 0; i < targets.length; i++) {
+                    targets[i] = in.readInt();
+                }
+                return new DependencyGraph(paths, offsets, targets);
+            }
+        }
+        
+        int size() {
+            return paths.length;
+        }
+        
+        int edgeCount() {
+            return targets.length;
+        }
+        
+        /** Node of a workbook path (either separator, any case), or -1 when the scanner did not see the file. */
+        int node(String relPath) {
+            Integer node = nodes.get(relPath.trim().replace('/', '\\').toLowerCase());
+            return node == null ? -1 : node;
+        }
+        
+        /** Every file that references one of the seeds, directly or through other files; seeds excluded. */
+        BitSet dependents(BitSet seeds) {
+            BitSet seen = (BitSet) seeds.clone();
+            Deque<Integer> queue = new ArrayDeque<>();
+            seeds.stream().forEach(queue::add);
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                for (int k = reverseOffsets[node]; k < reverseOffsets[node + 1]; k++) {
+                    int from = reverseTargets[k];
+                    if (!seen.get(from)) {
+                        seen.set(from);
+                        queue.add(from);
+                    }
+                }
+            }
+            seen.andNot(seeds);
+            return seen;
+        }
+        
+        /** Calls the visitor once per edge (a references b) between two files of the set. */
+        void edgesWithin(BitSet set, EdgeVisitor visitor) {
+            for (int from = set.nextSetBit(0); from >= 0; from = set.nextSetBit(from + 1)) {
+                for (int k = offsets[from]; k < offsets[from + 1]; k++) {
+                    if (set.get(targets[k])) {
+                        visitor.edge(from, targets[k]);
+                    }
+                }
+            }
+        }
+        
+        /** Files the node references. */
+        int[] references(int node) {
+            return Arrays.copyOfRange(targets, offsets[node], offsets[node + 1]);
+        }
+        
+        /** Files that reference the node. */
+        int[] referencedBy(int node) {
+            return Arrays.copyOfRange(reverseTargets, reverseOffsets[node], reverseOffsets[node + 1]);
+        }
+        
+        /**
+         * Groups of the set with no reference between groups (connected components, direction ignored),
+         * largest first. Batches cut along these groups never recompile each other.
+         */
+        List<BitSet> independentGroups(BitSet set) {
+            int[] parent = new int[paths.length];
+            set.stream().forEach(i -> parent[i] = i);
+            edgesWithin(set, (a, b) -> parent[root(parent, a)] = root(parent, b));
+            
+            Map<Integer, BitSet> groups = new HashMap<>();
+            set.stream().forEach(i -> groups.computeIfAbsent(root(parent, i), r -> new BitSet()).set(i));
+            List<BitSet> result = new ArrayList<>(groups.values());
+            result.sort(Comparator.comparingInt(BitSet::cardinality).reversed()
+                .thenComparingInt(g -> g.nextSetBit(0)));
+            return result;
+        }
+        
+        private static int root(int[] parent, int i) {
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]];
+                i = parent[i];
+            }
+            return i;
+        }
+        
+        interface EdgeVisitor {
+            void edge(int from, int to);
+        }
+    }
+    
     private void log(String message) {
-        System.out.println(message);
+        System.out.println(logPrefix + message);
     }
     
     private void log() {
@@ -859,6 +2627,11 @@ public class MigrationOrchestrator {
     }
     
     private void step(String message) {
+        if (!logPrefix.isEmpty()) {
+            // Batches of a multi-batch run interleave; one tagged line per step instead of a banner
+            System.out.println(logPrefix + message);
+            return;
+        }
         System.out.println();
         System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
         System.out.println(message);
@@ -866,10 +2639,10 @@ public class MigrationOrchestrator {
     }
     
     private void success(String message) {
-        System.out.println("[OK] " + message);
+        System.out.println("[OK] " + logPrefix + message);
     }
     
     private void error(String message) {
-        System.err.println("[ERROR] " + message);
+        System.err.println("[ERROR] " + logPrefix + message);
     }
 }
\ No newline at end of file
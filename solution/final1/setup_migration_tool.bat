@@ -39,8 +39,8 @@ echo     ^<name^>FPMS Migration Tool^</name^>
 echo     ^<description^>OpenRewrite-based JDK 8 to JDK 21 Migration Orchestrator^</description^>
 echo.
 echo     ^<properties^>
-echo         ^<maven.compiler.source^>11^</maven.compiler.source^>
-echo         ^<maven.compiler.target^>11^</maven.compiler.target^>
+echo         ^<!-- Runs on JDK 21: STEP 8 compiles for release 21 in-process, OpenRewrite parses with rewrite-java-21 --^>
+echo         ^<maven.compiler.release^>21^</maven.compiler.release^>
 echo         ^<project.build.sourceEncoding^>UTF-8^</project.build.sourceEncoding^>
 echo         ^<rewrite.version^>8.40.3^</rewrite.version^>
 echo         ^<rewrite-maven-plugin.version^>5.46.1^</rewrite-maven-plugin.version^>
@@ -80,6 +80,22 @@ echo             ^<groupId^>org.openrewrite^</groupId^>
 echo             ^<artifactId^>rewrite-java^</artifactId^>
 echo             ^<version^>${rewrite.version}^</version^>
 echo         ^</dependency^>
+echo         ^<dependency^>
+echo             ^<groupId^>org.openrewrite^</groupId^>
+echo             ^<artifactId^>rewrite-java-21^</artifactId^>
+echo             ^<version^>${rewrite.version}^</version^>
+echo         ^</dependency^>
+echo         ^<!-- Recipes for the in-process OpenRewrite run (same as the plugin dependencies below) --^>
+echo         ^<dependency^>
+echo             ^<groupId^>org.openrewrite.recipe^</groupId^>
+echo             ^<artifactId^>rewrite-migrate-java^</artifactId^>
+echo             ^<version^>2.28.0^</version^>
+echo         ^</dependency^>
+echo         ^<dependency^>
+echo             ^<groupId^>org.openrewrite.recipe^</groupId^>
+echo             ^<artifactId^>rewrite-logging-frameworks^</artifactId^>
+echo             ^<version^>2.15.0^</version^>
+echo         ^</dependency^>
 echo     ^</dependencies^>
 echo.
 echo     ^<build^>
@@ -154,8 +170,10 @@ REM Create batch file launcher
 echo Creating run_migration.bat launcher...
 (
 echo @echo off
-echo REM FPMS Migration Tool Launcher
-echo java -jar target\migration-tool-1.0.0-SNAPSHOT-jar-with-dependencies.jar %%*
+echo REM FPMS Migration Tool Launcher - the tool runs on JDK 21 ^(in-process javac --release 21, OpenRewrite Java 21 parser^)
+echo if not defined JAVA21_HOME set "JAVA21_HOME=C:\Program Files\Java\jdk-21"
+echo if not exist "%%JAVA21_HOME%%\bin\java.exe" echo [ERROR] JDK 21 not found at "%%JAVA21_HOME%%" - set JAVA21_HOME ^& exit /b 1
+echo "%%JAVA21_HOME%%\bin\java.exe" -jar target\migration-tool-1.0.0-SNAPSHOT-jar-with-dependencies.jar %%*
 ) > migration_tool\run_migration.bat
 
 echo [OK] Created run_migration.bat